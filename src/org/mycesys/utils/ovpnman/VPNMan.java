@@ -1,25 +1,68 @@
 package org.mycesys.utils.ovpnman;
 
+import com.sun.net.httpserver.Filter;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpExchange;
 
 
 import java.io.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.*;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.InvalidKeySpecException;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import static java.nio.charset.StandardCharsets.*;
 
@@ -27,20 +70,53 @@ public class VPNMan {
 
 
     private static class OVPNServer {
-        private final ExecutorService threadpool = Executors.newCachedThreadPool();
+        static final String EXECUTOR_CACHED = "cached";
+        static final String EXECUTOR_BOUNDED = "bounded";
+        static final String EXECUTOR_VIRTUAL = "virtual";
+
+        private final ExecutorService threadpool;
+        // Bounded mode only: requests being processed or waiting for it, and requests being processed
+        private final Semaphore admitted;
+        private final Semaphore running;
+        private final int backlog;
         private final String context;
-        private final String staticDir;
 
         private final String address;
         private final int port;
         private final OVPNManager manager;
+        private final StaticAssets assets;
+        private final long maxBodySize;
+        // Long-running profile operations are executed one by one, so HTTP threads are not blocked by easyrsa
+        private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "jobs");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+        private record CachedResponse(long version, byte[] body, String etag, int total) {
+        }
+
+        // Serialized GET /profiles response. Rebuilt only when profiles version changes
+        private volatile CachedResponse cachedProfiles;
+        // Distinguishes ETags of different server runs, as profiles version starts from 0 on each start
+        private final String instanceId = UUID.randomUUID().toString().substring(0, 8);
+        private static final String DELIMITER = "&";
+        private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
 
-        public OVPNServer(String address, int port, String context, String staticDir, OVPNManager manager) {
+        public OVPNServer(String address, int port, int backlog, String context, String staticDir, long maxBodySize,
+                          String executorType, int threads, int queue, OVPNManager manager) {
             this.address = address;
+            this.backlog = backlog;
+            this.threadpool = createExecutor(executorType);
+            var isBounded = EXECUTOR_BOUNDED.equals(executorType);
+            this.admitted = isBounded ? new Semaphore(threads + queue) : null;
+            this.running = isBounded ? new Semaphore(threads) : null;
+            this.maxBodySize = maxBodySize;
             this.context = context;
-            this.staticDir = staticDir;
             this.port = port;
             this.manager = manager;
+            this.assets = new StaticAssets(Paths.get(staticDir));
         }
 
         private void directContext(HttpExchange exchange) {
@@ -52,11 +128,53 @@ public class VPNMan {
                 var hash = paths[paths.length - 1];
                 var profile = manager.findByHash(hash);
                 if (profile.isPresent()) {
-                    try {
+                    var path = Paths.get(profile.get().profile());
+                    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                        var size = channel.size();
+                        // Ranges are served from plain file only
+                        var gzip = acceptsGzip(exchange) && !exchange.getRequestHeaders().containsKey("Range")
+                                ? manager.getGzipProfile(profile.get()) : Optional.<byte[]>empty();
+                        // File name contains content hash, so it is a strong validator by itself
+                        var etag = "\"%s%s\"".formatted(profile.get().hash(), gzip.isPresent() ? "-gzip" : "");
+                        var lastModified = Files.getLastModifiedTime(path).toInstant().truncatedTo(ChronoUnit.SECONDS);
+                        var lastModifiedHeader = HTTP_DATE.format(lastModified);
+                        exchange.getResponseHeaders().set("ETag", etag);
+                        exchange.getResponseHeaders().set("Last-Modified", lastModifiedHeader);
+                        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+                        if (manager.isGzipProfiles()) {
+                            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+                        }
+                        if (isNotModified(exchange, etag) || isNotModifiedSince(exchange, lastModified)) {
+                            exchange.sendResponseHeaders(304, -1);
+                            exchange.close();
+                            return;
+                        }
+                        var range = new ByteRange(0, size);
+                        var ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+                        if (ifRange == null || ifRange.equals(etag) || ifRange.equals(lastModifiedHeader)) {
+                            range = parseRange(exchange.getRequestHeaders().getFirst("Range"), size);
+                        }
+                        if (range == null) {
+                            exchange.getResponseHeaders().set("Content-Range", "bytes */%d".formatted(size));
+                            exchange.sendResponseHeaders(416, -1);
+                            exchange.close();
+                            return;
+                        }
                         exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
                         exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"%s\"".formatted(profile.get().name() + ".ovpn"));
-                        exchange.sendResponseHeaders(responseCode, Files.size(Paths.get(profile.get().profile())));
-                        Files.copy(Paths.get(profile.get().profile()), exchange.getResponseBody());
+                        if (gzip.isPresent()) {
+                            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                            try (var outputStream = exchange.getResponseBody()) {
+                                exchange.sendResponseHeaders(responseCode, gzip.get().length);
+                                outputStream.write(gzip.get());
+                            }
+                            return;
+                        }
+                        if (range.length() != size) {
+                            responseCode = 206;
+                            exchange.getResponseHeaders().set("Content-Range", "bytes %d-%d/%d".formatted(range.start(), range.start() + range.length() - 1, size));
+                        }
+                        sendFile(exchange, responseCode, channel, range);
                         return;
                     } catch (IOException e) {
                         System.out.println(e.getMessage());
@@ -81,57 +199,416 @@ public class VPNMan {
             }
         }
 
+        private CachedResponse getCachedProfiles() throws IOException {
+            var cached = cachedProfiles;
+            var version = manager.getProfilesVersion();
+            if (cached == null || cached.version() != version) {
+                var profiles = manager.getProfiles();
+                var buffer = new ByteArrayOutputStream();
+                JsonUtil.toJson(profiles, buffer);
+                var body = buffer.toByteArray();
+                cached = new CachedResponse(version, body, "\"" + manager.hashBytes(body) + "\"", profiles.size());
+                cachedProfiles = cached;
+            }
+            return cached;
+        }
+
+        private static Map<String, String> parseQuery(HttpExchange exchange) {
+            var query = exchange.getRequestURI().getRawQuery();
+            if (query == null || query.isEmpty()) {
+                return Collections.emptyMap();
+            }
+            var params = new HashMap<String, String>();
+            for (String param : query.split("&")) {
+                var parts = param.split("=", 2);
+                params.put(URLDecoder.decode(parts[0], UTF_8), parts.length > 1 ? URLDecoder.decode(parts[1], UTF_8) : "");
+            }
+            return params;
+        }
+
+        private static boolean isNotModified(HttpExchange exchange, String etag) {
+            var ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            return Arrays.stream(ifNoneMatch.split(","))
+                    .map(String::trim)
+                    .map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+                    .anyMatch(tag -> tag.equals("*") || tag.equals(etag));
+        }
+
+        private void sendProfiles(HttpExchange exchange) {
+            var params = parseQuery(exchange);
+            int offset;
+            int limit;
+            try {
+                offset = Integer.parseInt(params.getOrDefault("offset", "0"));
+                limit = Integer.parseInt(params.getOrDefault("limit", String.valueOf(Integer.MAX_VALUE)));
+            } catch (NumberFormatException e) {
+                offset = -1;
+                limit = -1;
+            }
+            if (offset < 0 || limit <= 0) {
+                sendText(exchange, 400, "offset should be non-negative and limit should be positive integer");
+                return;
+            }
+            var prefix = params.getOrDefault("prefix", "");
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+                if (prefix.isEmpty() && offset == 0 && limit == Integer.MAX_VALUE) {
+                    var cached = getCachedProfiles();
+                    exchange.getResponseHeaders().set("X-Total-Count", String.valueOf(cached.total()));
+                    exchange.getResponseHeaders().set("ETag", cached.etag());
+                    if (isNotModified(exchange, cached.etag())) {
+                        exchange.sendResponseHeaders(304, -1);
+                        return;
+                    }
+                    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                    exchange.sendResponseHeaders(200, cached.body().length);
+                    outputStream.write(cached.body());
+                } else {
+                    // Page is streamed, so ETag is derived from profiles version and query instead of content
+                    var version = manager.getProfilesVersion();
+                    var page = manager.getProfiles(prefix, offset, limit);
+                    var etag = "\"%s-%d-%s\"".formatted(instanceId, version, manager.hashString(prefix + DELIMITER + offset + DELIMITER + limit));
+                    exchange.getResponseHeaders().set("X-Total-Count", String.valueOf(page.total()));
+                    exchange.getResponseHeaders().set("ETag", etag);
+                    if (isNotModified(exchange, etag)) {
+                        exchange.sendResponseHeaders(304, -1);
+                        return;
+                    }
+                    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                    exchange.sendResponseHeaders(200, 0);
+                    JsonUtil.toJson(page.profiles(), outputStream);
+                }
+                outputStream.flush();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        private record ByteRange(long start, long length) {
+        }
+
+        /**
+         * Sends range of file from opened channel. Channel is used for consistency, not speed: length and range are taken from
+         * the same opened file, so they match sent content even if profile file is replaced meanwhile.
+         * Response body of HttpServer is a plain stream, so transferTo copies through a buffer and the stream adapter's array
+         */
+        private static void sendFile(HttpExchange exchange, int responseCode, FileChannel channel, ByteRange range) throws IOException {
+            try (var outputStream = exchange.getResponseBody()) {
+                exchange.sendResponseHeaders(responseCode, range.length() == 0 ? -1 : range.length());
+                var target = Channels.newChannel(outputStream);
+                var position = range.start();
+                var end = range.start() + range.length();
+                while (position < end) {
+                    var transferred = channel.transferTo(position, end - position, target);
+                    if (transferred <= 0) {
+                        throw new IOException("File was truncated while sending");
+                    }
+                    position += transferred;
+                }
+            }
+        }
+
+        /**
+         * Parses Range header. Only single range is supported, absent, malformed and multiple ranges are served as whole file
+         *
+         * @return requested range, whole file range or null if requested range is not satisfiable
+         */
+        private static ByteRange parseRange(String header, long size) {
+            var whole = new ByteRange(0, size);
+            if (header == null || !header.startsWith("bytes=") || header.contains(",")) {
+                return whole;
+            }
+            var bounds = header.substring("bytes=".length()).trim().split("-", -1);
+            if (bounds.length != 2) {
+                return whole;
+            }
+            try {
+                long start;
+                long end = size - 1;
+                if (bounds[0].isEmpty()) {
+                    // Suffix range: last N bytes
+                    var suffix = Long.parseLong(bounds[1]);
+                    if (suffix <= 0) {
+                        return suffix == 0 ? null : whole;
+                    }
+                    start = Math.max(0, size - suffix);
+                } else {
+                    start = Long.parseLong(bounds[0]);
+                    if (!bounds[1].isEmpty()) {
+                        var last = Long.parseLong(bounds[1]);
+                        if (last < start || start < 0) {
+                            return whole;
+                        }
+                        end = Math.min(last, end);
+                    }
+                }
+                if (start >= size) {
+                    return null;
+                }
+                return new ByteRange(start, end - start + 1);
+            } catch (NumberFormatException e) {
+                return whole;
+            }
+        }
+
+        /**
+         * If-Modified-Since is used only when If-None-Match is absent
+         */
+        private static boolean isNotModifiedSince(HttpExchange exchange, Instant lastModified) {
+            var ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+            if (ifModifiedSince == null || exchange.getRequestHeaders().containsKey("If-None-Match")) {
+                return false;
+            }
+            try {
+                return !lastModified.isAfter(Instant.from(HTTP_DATE.parse(ifModifiedSince)));
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+
+        private void sendText(HttpExchange exchange, int responseCode, String responseData) {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                var responseBytes = responseData.getBytes(UTF_8);
+                exchange.sendResponseHeaders(responseCode, responseBytes.length);
+                outputStream.write(responseBytes);
+                outputStream.flush();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        /**
+         * Long-running operation executed on jobExecutor. Collects progress reported by manager
+         */
+        private static class Job implements OVPNManager.Progress {
+            private final String id = UUID.randomUUID().toString();
+            private final String type;
+            private volatile String status = "queued";
+            private final AtomicInteger total = new AtomicInteger();
+            private final AtomicInteger done = new AtomicInteger();
+            private final AtomicInteger failed = new AtomicInteger();
+            private final Map<String, String> errors = new ConcurrentHashMap<>();
+            private volatile Object result;
+            private volatile long finishedAt;
+
+            Job(String type) {
+                this.type = type;
+            }
+
+            @Override
+            public void total(int total) {
+                this.total.set(total);
+            }
+
+            @Override
+            public void done(String name, String error) {
+                if (error != null) {
+                    failed.incrementAndGet();
+                    errors.put(name, error);
+                    System.out.println("Job %s (%s): `%s` failed. Reason: %s".formatted(id, type, name, error));
+                }
+                System.out.println("Job %s (%s): %d/%d done, %d failed".formatted(id, type, done.incrementAndGet(), total.get(), failed.get()));
+            }
+
+            JobStatus toStatus() {
+                return new JobStatus(id, type, status, total.get(), done.get(), failed.get(), Map.copyOf(errors), result);
+            }
+        }
+
+        record JobStatus(String id, String type, String status, int total, int done, int failed, Map<String, String> errors, Object result) {
+        }
+
+        private static final Duration JOB_RETENTION = Duration.ofHours(1);
+
+        private Job submitJob(String type, Function<Job, Object> task) {
+            var expired = System.currentTimeMillis() - JOB_RETENTION.toMillis();
+            jobs.values().removeIf(job -> job.finishedAt != 0 && job.finishedAt < expired);
+            var job = new Job(type);
+            jobs.put(job.id, job);
+            jobExecutor.execute(() -> {
+                job.status = "running";
+                try {
+                    job.result = task.apply(job);
+                    job.status = "done";
+                } catch (RuntimeException e) {
+                    System.out.println("Job %s (%s) failed. Reason: %s".formatted(job.id, type, e.getMessage()));
+                    job.errors.put("", String.valueOf(e.getMessage()));
+                    job.status = "failed";
+                }
+                job.finishedAt = System.currentTimeMillis();
+            });
+            return job;
+        }
+
+        private String acceptJob(HttpExchange exchange, Job job) {
+            exchange.getResponseHeaders().set("Location", "/%s/jobs/%s".formatted(context, job.id));
+            return JsonUtil.toJson(job.toStatus());
+        }
+
+        private void jobsContext(HttpExchange exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendText(exchange, 405, "Only GET method supported");
+                return;
+            }
+            var paths = exchange.getRequestURI().getPath().split("/");
+            var id = paths[paths.length - 1];
+            String responseData;
+            int responseCode = 200;
+            if ("jobs".equals(id)) {
+                responseData = JsonUtil.toJson(jobs.values().stream().map(Job::toStatus).toList());
+            } else if (jobs.containsKey(id)) {
+                responseData = JsonUtil.toJson(jobs.get(id).toStatus());
+            } else {
+                sendText(exchange, 404, "Could not find job by id:" + id);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-store");
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                var responseBytes = responseData.getBytes(UTF_8);
+                exchange.sendResponseHeaders(responseCode, responseBytes.length);
+                outputStream.write(responseBytes);
+                outputStream.flush();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
         private void profilesContext(HttpExchange exchange) {
+            if ("GET".equals(exchange.getRequestMethod())) {
+                sendProfiles(exchange);
+                return;
+            }
             String responseData;
             int responseCode = 200;
-            try {
-                responseData = switch (exchange.getRequestMethod()) {
-                    case "GET" -> {
-                        try {
-                            yield JsonUtil.toJson(manager.getProfiles().toArray());
-                        } catch (Exception e) {
-                            System.out.println(e.getMessage());
-                        }
-                        yield "{}";
+            responseData = switch (exchange.getRequestMethod()) {
+                case "POST" -> {
+                    var isBulk = exchange.getRequestURI().getPath().endsWith("/profiles/bulk");
+                    var isRevoke = exchange.getRequestURI().getPath().endsWith("/profiles/revoke");
+                    Map<String, Object> request;
+                    try {
+                        request = JsonUtil.fromJSON(exchange.getRequestBody(), maxBodySize);
+                    } catch (JsonUtil.BodyTooLargeException e) {
+                        responseCode = 413;
+                        yield e.getMessage();
+                    } catch (IOException | RuntimeException e) {
+                        responseCode = 400;
+                        yield e.getMessage();
                     }
-                    case "POST" -> {
-                        Map<String, Object> request = JsonUtil.fromJSON(exchange.getRequestBody());
-                        if (request.containsKey("name")) {
-                            responseCode = 201;
-                            yield JsonUtil.toJson(manager.createProfile((String) request.get("name")).get());
-                        } else {
+                    if (isBulk || isRevoke) {
+                        if (!(request.get("names") instanceof List<?> names) || names.stream().anyMatch(n -> !(n instanceof String))) {
                             responseCode = 400;
-                            yield "No name provided";
+                            yield "No names provided";
                         }
+                        var nameList = names.stream().map(String.class::cast).toList();
+                        responseCode = 202;
+                        yield acceptJob(exchange, isBulk
+                                ? submitJob("create", job -> manager.createProfiles(nameList, job))
+                                : submitJob("revoke", job -> manager.revokeProfiles(nameList, job)));
                     }
-                    case "DELETE" -> {
-                        var paths = exchange.getRequestURI().getPath().split("/");
-                        var name = paths[paths.length - 1];
-                        manager.deleteProfile(name);
-                        yield name + " successfully deleted";
-                    }
-                    case "PUT" -> {
-                        manager.updateProfiles();
-                        yield "Successfully updated";
-                    }
-                    default -> {
-                        responseCode = 405;
-                        yield "Only GET, POST, PUT, DELETE methods supported";
+                    if (request.get("name") instanceof String name) {
+                        responseCode = 201;
+                        yield JsonUtil.toJson(manager.createProfile(name).get());
+                    } else {
+                        responseCode = 400;
+                        yield "No name provided";
                     }
-                };
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException(e);
-            }
+                }
+                case "DELETE" -> {
+                    var paths = exchange.getRequestURI().getPath().split("/");
+                    var name = paths[paths.length - 1];
+                    var result = manager.deleteProfile(name);
+                    yield switch (result.status()) {
+                        case revoked, deleted -> name + " successfully deleted";
+                        case notFound -> {
+                            responseCode = 404;
+                            yield result.error();
+                        }
+                        case failed -> {
+                            responseCode = 500;
+                            yield result.error();
+                        }
+                    };
+                }
+                case "PUT" -> {
+                    responseCode = 202;
+                    yield acceptJob(exchange, submitJob("update", manager::updateProfiles));
+                }
+                default -> {
+                    responseCode = 405;
+                    yield "Only GET, POST, PUT, DELETE methods supported";
+                }
+            };
             exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
             try (OutputStream outputStream = exchange.getResponseBody()) {
-                exchange.sendResponseHeaders(responseCode, responseData.length());
-                outputStream.write(responseData.getBytes());
+                var responseBytes = responseData.getBytes(UTF_8);
+                exchange.sendResponseHeaders(responseCode, responseBytes.length);
+                outputStream.write(responseBytes);
                 outputStream.flush();
             } catch (IOException e) {
                 System.out.println(e.getMessage());
             }
         }
 
+        /**
+         * Streams ZIP archive of profiles straight from output dir. GET exports all profiles (optionally filtered by prefix),
+         * POST exports profiles listed in request body
+         */
+        private void exportContext(HttpExchange exchange) {
+            List<String> names;
+            switch (exchange.getRequestMethod()) {
+                case "GET" -> names = manager.getProfiles(parseQuery(exchange).getOrDefault("prefix", ""), 0, Integer.MAX_VALUE)
+                        .profiles().stream().map(OVPNManager.VpnProfile::name).toList();
+                case "POST" -> {
+                    Map<String, Object> request;
+                    try {
+                        request = JsonUtil.fromJSON(exchange.getRequestBody(), maxBodySize);
+                    } catch (JsonUtil.BodyTooLargeException e) {
+                        sendText(exchange, 413, e.getMessage());
+                        return;
+                    } catch (IOException | RuntimeException e) {
+                        sendText(exchange, 400, e.getMessage());
+                        return;
+                    }
+                    if (!(request.get("names") instanceof List<?> requested) || requested.stream().anyMatch(n -> !(n instanceof String))) {
+                        sendText(exchange, 400, "No names provided");
+                        return;
+                    }
+                    names = requested.stream().map(String.class::cast).toList();
+                }
+                default -> {
+                    sendText(exchange, 405, "Only GET, POST methods supported");
+                    return;
+                }
+            }
+            // Newest profile file for each name, so archive entries are unique even if several files exist for the same name
+            var profiles = manager.findByNames(names);
+            exchange.getResponseHeaders().set("Content-Type", "application/zip");
+            exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"profiles.zip\"");
+            exchange.getResponseHeaders().set("X-Total-Count", String.valueOf(profiles.size()));
+            try (var zipOut = new ZipOutputStream(exchange.getResponseBody())) {
+                exchange.sendResponseHeaders(200, 0);
+                for (var profile : profiles) {
+                    var path = Paths.get(profile.profile());
+                    try (var in = Files.newInputStream(path)) {
+                        var entry = new ZipEntry(profile.name() + ".ovpn");
+                        entry.setLastModifiedTime(Files.getLastModifiedTime(path));
+                        zipOut.putNextEntry(entry);
+                        in.transferTo(zipOut);
+                        zipOut.closeEntry();
+                    } catch (NoSuchFileException e) {
+                        // Profile was removed after archive was started
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
         private void staticContext(HttpExchange exchange) {
             if (!exchange.getRequestMethod().equals("GET")) {
                 var responseData = "Only GET method supported";
@@ -143,34 +620,7 @@ public class VPNMan {
                     System.err.println(e.getMessage());
                 }
             } else {
-                var path = Paths.get(staticDir, exchange.getRequestURI().getPath().replaceFirst("/static/", ""));
-                var extensionParts = path.getFileName().toString().split("\\.");
-                try (OutputStream outputStream = exchange.getResponseBody()) {
-                    if (extensionParts.length > 1) {
-                        var mimetype = switch (extensionParts[extensionParts.length - 1]) {
-                            case "html" -> "text/html; charset=utf-8";
-                            case "json" -> "application/json; charset=utf-8";
-                            case "js" -> "text/javascript; charset=utf-8";
-                            case "css" -> "text/css; charset=utf-8";
-                            case "png" -> "image/png";
-                            case "jpeg", "jpg", "jpe" -> "image/jpeg";
-                            case "svg" -> "image/svg+xml";
-                            case "ico" -> "image/x-icon";
-                            case "gif" -> "image/gif";
-                            case "ttf" -> "application/x-font-ttf";
-                            case "woff" -> "application/font-woff";
-                            default -> "application/octet-stream";
-                        };
-                        exchange.getResponseHeaders().set("Content-Type", mimetype);
-                    } else {
-                        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
-                        exchange.getResponseHeaders().set("Content-Disposition", "attachment");
-                    }
-                    exchange.sendResponseHeaders(200, Files.size(path));
-                    Files.copy(path, outputStream);
-                } catch (IOException e) {
-                    System.err.println(e.getMessage());
-                }
+                sendAsset(exchange, exchange.getRequestURI().getPath().replaceFirst("/static/", ""), "public, max-age=300");
             }
         }
 
@@ -185,29 +635,120 @@ public class VPNMan {
                     System.err.println(e.getMessage());
                 }
             } else {
-                var path = Paths.get(staticDir, "index.html");
-                var extensionParts = path.getFileName().toString().split("\\.");
-                try (OutputStream outputStream = exchange.getResponseBody()) {
-                    if (Files.exists(path)) {
-                        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
-                        exchange.sendResponseHeaders(200, Files.size(path));
-                        Files.copy(path, outputStream);
-                    } else {
-                        exchange.sendResponseHeaders(404, -1);
-                    }
-                } catch (IOException e) {
-                    System.err.println(e.getMessage());
+                // UI entry point is revalidated on each load, so new UI version is picked up right away
+                sendAsset(exchange, "index.html", "no-cache");
+            }
+        }
+
+        private void sendAsset(HttpExchange exchange, String name, String cacheControl) {
+            var asset = assets.get(name);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                if (asset == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+                var isGzip = asset.gzip() != null && acceptsGzip(exchange);
+                var etag = isGzip ? asset.gzipEtag() : asset.etag();
+                exchange.getResponseHeaders().set("Content-Type", asset.contentType());
+                if (asset.isAttachment()) {
+                    exchange.getResponseHeaders().set("Content-Disposition", "attachment");
+                }
+                if (asset.gzip() != null) {
+                    exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+                }
+                exchange.getResponseHeaders().set("Cache-Control", cacheControl);
+                exchange.getResponseHeaders().set("ETag", etag);
+                if (isNotModified(exchange, etag)) {
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+                var body = asset.body();
+                if (isGzip) {
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                    body = asset.gzip();
+                }
+                exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+                outputStream.write(body);
+                outputStream.flush();
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+
+        private static boolean acceptsGzip(HttpExchange exchange) {
+            var acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (acceptEncoding == null) {
+                return false;
+            }
+            return Arrays.stream(acceptEncoding.split(","))
+                    .map(coding -> coding.split(";"))
+                    .anyMatch(parts -> parts[0].trim().equalsIgnoreCase("gzip")
+                            && Arrays.stream(parts).skip(1).map(String::trim).noneMatch(param -> param.matches("q=0(\\.0*)?")));
+        }
+
+        /**
+         * Creates executor for HTTP requests. {@code virtual} starts virtual thread per request, if JVM supports it.
+         * Otherwise cached pool is used, {@code bounded} mode limits requests with limitFilter instead of the pool size
+         */
+        static ExecutorService createExecutor(String type) {
+            if (EXECUTOR_VIRTUAL.equals(type)) {
+                try {
+                    return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    System.out.println("Virtual threads are not supported by this JVM. Will use %s executor".formatted(EXECUTOR_CACHED));
                 }
             }
+            return Executors.newCachedThreadPool();
         }
 
+        /**
+         * Processes at most {@code threads} requests at once and lets at most {@code queue} more wait, other requests are answered with 503.
+         * Runs on executor thread after request headers are read, so slow client can't block the server dispatcher
+         */
+        private final Filter limitFilter = new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                if (!admitted.tryAcquire()) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    exchange.getResponseHeaders().set("Connection", "close");
+                    sendText(exchange, 503, "Server is busy");
+                    return;
+                }
+                try {
+                    running.acquire();
+                    try {
+                        chain.doFilter(exchange);
+                    } finally {
+                        running.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    sendText(exchange, 503, "Server is stopping");
+                } finally {
+                    admitted.release();
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Limits number of concurrent requests";
+            }
+        };
+
         public void start() {
             try {
-                var server = HttpServer.create(new InetSocketAddress(address, port), 0);
-                server.createContext("/", this::rootContext);
-                server.createContext("/" + context + "/profiles", this::profilesContext);
-                server.createContext("/static", this::staticContext);
-                server.createContext("/direct", this::directContext);
+                var server = HttpServer.create(new InetSocketAddress(address, port), backlog);
+                Stream.of(server.createContext("/", this::rootContext),
+                        server.createContext("/" + context + "/profiles", this::profilesContext),
+                        server.createContext("/" + context + "/jobs", this::jobsContext),
+                        server.createContext("/" + context + "/export", this::exportContext),
+                        server.createContext("/static", this::staticContext),
+                        server.createContext("/direct", this::directContext)
+                ).forEach(httpContext -> {
+                    if (admitted != null) {
+                        httpContext.getFilters().add(limitFilter);
+                    }
+                });
                 server.setExecutor(threadpool);
                 server.start();
                 System.out.println("Server started on: http://%s:%s/".formatted(address, String.valueOf(port)));
@@ -218,43 +759,260 @@ public class VPNMan {
         }
     }
 
+    /**
+     * In-memory copy of static content dir. Each file is kept with its gzip variant and ETag, so UI is served without disk reads.
+     * Dir is watched and reloaded on change
+     */
+    private static class StaticAssets {
+        record Asset(byte[] body, byte[] gzip, String etag, String gzipEtag, String contentType, boolean isAttachment) {
+        }
+
+        private final Path dir;
+        private volatile Map<String, Asset> assets = Map.of();
+
+        StaticAssets(Path dir) {
+            this.dir = dir;
+            reload();
+            watch();
+        }
+
+        Asset get(String name) {
+            return assets.get(name);
+        }
+
+        private void reload() {
+            var loaded = new HashMap<String, Asset>();
+            try (var files = Files.walk(dir)) {
+                files.filter(Files::isRegularFile).forEach(path -> {
+                    try {
+                        loaded.put(dir.relativize(path).toString().replace(File.separatorChar, '/'), load(path));
+                    } catch (IOException e) {
+                        System.out.println(e.getMessage());
+                    }
+                });
+            } catch (IOException e) {
+                System.out.println("Unable to load static content. Reason:\n" + e.getMessage());
+                return;
+            }
+            assets = Map.copyOf(loaded);
+        }
+
+        private static Asset load(Path path) throws IOException {
+            var body = Files.readAllBytes(path);
+            var contentType = contentType(path.getFileName().toString());
+            var etag = hash(body);
+            byte[] gzip = null;
+            if (contentType != null && isCompressible(contentType)) {
+                var compressed = gzip(body);
+                // Tiny files could become bigger after compression
+                if (compressed.length < body.length) {
+                    gzip = compressed;
+                }
+            }
+            return new Asset(body, gzip, "\"%s\"".formatted(etag), "\"%s-gzip\"".formatted(etag),
+                    contentType == null ? "application/octet-stream" : contentType, contentType == null);
+        }
+
+        /**
+         * @return content type by file extension or null if file has no extension
+         */
+        private static String contentType(String fileName) {
+            var extensionParts = fileName.split("\\.");
+            if (extensionParts.length < 2) {
+                return null;
+            }
+            return switch (extensionParts[extensionParts.length - 1]) {
+                case "html" -> "text/html; charset=utf-8";
+                case "json" -> "application/json; charset=utf-8";
+                case "js" -> "text/javascript; charset=utf-8";
+                case "css" -> "text/css; charset=utf-8";
+                case "png" -> "image/png";
+                case "jpeg", "jpg", "jpe" -> "image/jpeg";
+                case "svg" -> "image/svg+xml";
+                case "ico" -> "image/x-icon";
+                case "gif" -> "image/gif";
+                case "ttf" -> "application/x-font-ttf";
+                case "woff" -> "application/font-woff";
+                default -> "application/octet-stream";
+            };
+        }
+
+        private static boolean isCompressible(String contentType) {
+            return contentType.startsWith("text/") || contentType.startsWith("application/json")
+                    || contentType.equals("image/svg+xml") || contentType.equals("image/x-icon") || contentType.equals("application/x-font-ttf");
+        }
+
+        private static String hash(byte[] bytes) {
+            try {
+                return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void register(WatchService watchService) throws IOException {
+            try (var dirs = Files.walk(dir)) {
+                for (var subdir : dirs.filter(Files::isDirectory).toList()) {
+                    subdir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                            StandardWatchEventKinds.ENTRY_MODIFY);
+                }
+            }
+        }
+
+        private void watch() {
+            WatchService watchService;
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+                register(watchService);
+            } catch (IOException e) {
+                System.out.println("Unable to watch static content dir. Changes will be applied after restart. Reason:\n" + e.getMessage());
+                return;
+            }
+            var watcher = new Thread(() -> {
+                while (true) {
+                    try {
+                        var key = watchService.take();
+                        // Editors and deployments change several files at once, so wait for the burst to end before reloading
+                        do {
+                            key.pollEvents();
+                            key.reset();
+                        } while ((key = watchService.poll(200, TimeUnit.MILLISECONDS)) != null);
+                        register(watchService);
+                        reload();
+                    } catch (InterruptedException | ClosedWatchServiceException e) {
+                        return;
+                    } catch (IOException e) {
+                        System.out.println(e.getMessage());
+                    }
+                }
+            }, "static-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+    }
+
     private static class OVPNManager {
 
 
         private static enum EasyRSAAction {
-            create,
-            revoke;
+            genReq,
+            signReq,
+            revoke,
+            genCrl;
         }
 
         private static final String DELIMETER = "_-_";
         private static final String EXTENSION = ".ovpn";
+        private static final String TEMP_PREFIX = ".vpnman-";
+        private static final String TEMP_SUFFIX = ".tmp";
+        private static final String ISSUER_EASYRSA = "easyrsa";
+        private static final String ISSUER_NATIVE = "native";
+        static final String LAYOUT_FLAT = "flat";
+        static final String LAYOUT_SHARDED = "sharded";
+        // Sharded layout keeps profile in subdir named by the first hex chars of its hash
+        private static final int SHARD_PREFIX_LENGTH = 2;
 
         record VpnProfile(String name, String profile, String hash) {
         }
 
+        record ProfilesPage(List<VpnProfile> profiles, int total) {
+        }
+
+        record ProfileResult(String name, VpnProfile profile, String error) {
+        }
+
+        /**
+         * Receives progress of long-running operations. error is null if item was processed successfully
+         */
+        interface Progress {
+            Progress NONE = new Progress() {
+                @Override
+                public void total(int total) {
+                }
+
+                @Override
+                public void done(String name, String error) {
+                }
+            };
+
+            void total(int total);
+
+            void done(String name, String error);
+        }
+
+        record UpdateResult(int regenerated, int unchanged, int removed, int failed) {
+        }
+
+        enum RevokeStatus {
+            revoked,
+            // Profile file was removed, but there was no valid certificate to revoke
+            deleted,
+            notFound,
+            failed
+        }
+
+        record RevokeResult(String name, RevokeStatus status, String error) {
+        }
+
+        record EasyRSAResult(int exitCode, String output, String error, Duration duration) {
+        }
+
+        private static final Duration EASYRSA_TIMEOUT = Duration.ofMinutes(2);
+        // Output of exited or killed easyrsa is awaited for this long, as a leftover child could still hold the pipes
+        private static final Duration EASYRSA_OUTPUT_TIMEOUT = Duration.ofSeconds(5);
+        private static final int NAME_LOCK_STRIPES = 64;
+        private static final String EASYRSA_CONFIRM_PROMPT = "Type the word 'yes' to continue";
+
         private String easyRSADir = "/etc/openvpn/server/easy-rsa";
-        private String template;
+        private Template template;
         private String outputDir = "/home/crp/ovpn-files";
 
         private boolean isDryRun = false;
+        private boolean isSharded = false;
+
+        // Runs certificate generation for bulk operations
+        private ExecutorService workers;
+        private CertificateIssuer issuer;
+        // Pumps easyrsa processes output
+        private final ExecutorService processIO = Executors.newCachedThreadPool(runnable -> {
+            var thread = new Thread(runnable, "easyrsa-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // easyrsa actions changing PKI index (sign, revoke) must not run concurrently
+        private final ReentrantLock pkiLock = new ReentrantLock();
+        // Set when gen-crl failed after revocation, so CRL is regenerated by the next revoke. Guarded by pkiLock
+        private boolean isCrlOutdated;
+        // Striped per-name locks: create, revoke and update of the same name are serialized, different names run in parallel
+        private final ReentrantLock[] nameLocks = Stream.generate(ReentrantLock::new).limit(NAME_LOCK_STRIPES).toArray(ReentrantLock[]::new);
+        // Profile creations in progress by name
+        private final Map<String, CompletableFuture<Optional<VpnProfile>>> creations = new ConcurrentHashMap<>();
+        private CertificateIndex certificateIndex;
+
+        private boolean isGzipProfiles;
+        // Gzip variants of profiles by hash. Profile content never changes for the same hash, so entries live as long as profile is indexed
+        private final Map<String, byte[]> gzipProfiles = new ConcurrentHashMap<>();
+        // In-memory index of profiles stored in outputDir. Kept in sync by create/delete/update, so lookups never list the directory
+        private final Map<String, VpnProfile> profilesByHash = new ConcurrentHashMap<>();
+        private final Map<String, VpnProfile> profilesByName = new ConcurrentHashMap<>();
+        private final NavigableSet<VpnProfile> sortedProfiles = new ConcurrentSkipListSet<>(
+                Comparator.comparing(VpnProfile::name).thenComparing(VpnProfile::hash));
+        // Incremented on every index change. Lets callers cache anything derived from profiles list
+        private final AtomicLong profilesVersion = new AtomicLong();
 
         private OVPNManager() {
         }
 
         public static Optional<OVPNManager> build(String easyRSADir, String template, String outputDir) {
-            OVPNManager manager = new OVPNManager();
-            Path easyRSABinary = Paths.get(easyRSADir, "easyrsa");
-            if (!Files.exists(easyRSABinary) || !Files.isExecutable(easyRSABinary)) {
-                System.out.println("Cannot find executable by path: `%s`. VPN management is not possible".formatted(easyRSABinary.toString()));
-                return Optional.empty();
-            }
-            manager.easyRSADir = easyRSADir;
-            manager.template = template;
-            manager.outputDir = outputDir;
-            return Optional.of(manager);
+            return build(easyRSADir, template, outputDir, false);
         }
 
         public static Optional<OVPNManager> build(String easyRSADir, String template, String outputDir, boolean isDev) {
+            return build(easyRSADir, template, outputDir, isDev, Runtime.getRuntime().availableProcessors(), ISSUER_EASYRSA, 0, 0, true, LAYOUT_FLAT);
+        }
+
+        public static Optional<OVPNManager> build(String easyRSADir, String template, String outputDir, boolean isDev, int workers, String issuer,
+                                                  int keyPoolSize, int keyPoolLow, boolean isGzipProfiles, String layout) {
             OVPNManager manager = new OVPNManager();
             Path easyRSABinary = Paths.get(easyRSADir, "easyrsa");
             if ((!Files.exists(easyRSABinary) || !Files.isExecutable(easyRSABinary)) && !isDev) {
@@ -262,114 +1020,638 @@ public class VPNMan {
                 return Optional.empty();
             }
             manager.easyRSADir = easyRSADir;
-            manager.template = template;
+            manager.template = Template.compile(template);
             manager.outputDir = outputDir;
             manager.isDryRun = isDev;
+            manager.isGzipProfiles = isGzipProfiles;
+            manager.isSharded = LAYOUT_SHARDED.equals(layout);
+            manager.certificateIndex = new CertificateIndex(Paths.get(easyRSADir, "pki", "index.txt"));
+            manager.workers = Executors.newFixedThreadPool(workers, runnable -> {
+                var thread = new Thread(runnable, "profiles-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            manager.issuer = manager.new EasyRSAIssuer();
+            if (ISSUER_NATIVE.equals(issuer) && !isDev) {
+                try {
+                    var nativeIssuer = new NativeIssuer(Paths.get(easyRSADir, "pki"), manager.pkiLock, manager.issuer);
+                    manager.issuer = nativeIssuer;
+                    System.out.println("Certificates will be issued in-process with CA from %s".formatted(easyRSADir));
+                    // Pool is created only with loaded CA, so its filler never generates keys nobody takes
+                    if (keyPoolSize > 0) {
+                        try {
+                            nativeIssuer.setKeyPool(new KeyPool(Paths.get(easyRSADir, "pki", "private", ".vpnman-key-pool"), keyPoolLow, keyPoolSize,
+                                    nativeIssuer.keySize()));
+                        } catch (IOException e) {
+                            System.out.println("Unable to create key pool. Keys will be generated on demand. Reason: " + e.getMessage());
+                        }
+                    }
+                } catch (IOException | GeneralSecurityException e) {
+                    System.out.println("Native issuer is not available. easyrsa will be used instead. Reason:\n" + e.getMessage());
+                }
+            }
+            manager.removeTempFiles();
+            manager.migrateLayout();
+            manager.loadProfiles();
+            manager.watchProfiles();
             return Optional.of(manager);
         }
 
+        /**
+         * Concurrent requests for the same name share one in-flight creation and its result
+         */
         private Optional<VpnProfile> createProfile(String name) {
-            var certPath = Paths.get(easyRSADir, "pki", "issued", name + ".crt");
-            var keyPath = Paths.get(easyRSADir, "pki", "private", name + ".key");
-            if (!Files.exists(certPath) || !Files.exists(keyPath)) {
-                if (!isDryRun) {
-                    runEasyRSAAction(name, EasyRSAAction.create);
+            var creation = new CompletableFuture<Optional<VpnProfile>>();
+            var inFlight = creations.putIfAbsent(name, creation);
+            if (inFlight != null) {
+                try {
+                    return inFlight.join();
+                } catch (CompletionException e) {
+                    throw e.getCause() instanceof RuntimeException cause ? cause : e;
                 }
             }
             try {
-                String cert = "";
-                String key = "";
-                if (!isDryRun) {
-                    cert = Files.readString(certPath, UTF_8);
-                    key = Files.readString(keyPath, UTF_8);
+                var result = createProfileUnderLock(name);
+                creation.complete(result);
+                return result;
+            } catch (RuntimeException e) {
+                creation.completeExceptionally(e);
+                throw e;
+            } finally {
+                creations.remove(name, creation);
+            }
+        }
 
-                } else {
-                    //Random string provides different hashes
-                    cert = UUID.randomUUID().toString();
-                    key = UUID.randomUUID().toString();
-                }
-                String profileContent = this.template.replace("${CERT}", cert).replace("${KEY}", key);
-                String hash = hashString(profileContent);
-                Path profile = getOVPNFile(name, hash).orElseThrow();
-                Files.writeString(profile, profileContent, StandardOpenOption.CREATE);
-                return Optional.of(getProfileByPath(profile));
+        private Optional<VpnProfile> createProfileUnderLock(String name) {
+            var lock = nameLock(name);
+            lock.lock();
+            try {
+                ensureCertificate(name);
+                var content = renderProfile(name);
+                var hash = hashBytes(content);
+                // Duplicate request finds profile written by the previous one and doesn't rewrite it
+                var actual = findActual(name, hash);
+                return Optional.of(actual.isPresent() ? actual.get() : writeProfile(name, hash, content));
             } catch (IOException e) {
                 System.out.println(e.getMessage());
+            } finally {
+                lock.unlock();
             }
             return Optional.empty();
         }
 
-        private void deleteProfile(String name) {
-            var profile = findByName(name);
-            if (profile.isEmpty()) {
-                System.out.println("Could not find profile `%s` to delete.".formatted(name));
-                return;
+        private ReentrantLock nameLock(String name) {
+            return nameLocks[Math.floorMod(name.hashCode(), nameLocks.length)];
+        }
+
+        /**
+         * Locks stripes of all names in ascending order, so concurrent bulk operations can't deadlock
+         *
+         * @return locked stripes, to be released with unlockNames
+         */
+        private List<ReentrantLock> lockNames(Collection<String> names) {
+            var locks = names.stream()
+                    .mapToInt(name -> Math.floorMod(name.hashCode(), nameLocks.length))
+                    .distinct()
+                    .sorted()
+                    .mapToObj(stripe -> nameLocks[stripe])
+                    .toList();
+            locks.forEach(ReentrantLock::lock);
+            return locks;
+        }
+
+        private void unlockNames(List<ReentrantLock> locks) {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
+            }
+        }
+
+        private Optional<VpnProfile> findActual(String name, String hash) {
+            var current = profilesByHash.get(hash);
+            if (current != null && current.name().equals(name) && Files.exists(Paths.get(current.profile()))) {
+                return Optional.of(current);
             }
+            return Optional.empty();
+        }
+
+        private void ensureCertificate(String name) {
             if (!isDryRun) {
-                int status = runEasyRSAAction(name, EasyRSAAction.revoke);
+                issuer.issue(name);
+            }
+        }
+
+        /**
+         * Issues client key and certificate to easyrsa pki dir (private/, issued/, index.txt) if they are missing
+         */
+        interface CertificateIssuer {
+            void issue(String name);
+        }
+
+        private class EasyRSAIssuer implements CertificateIssuer {
+            @Override
+            public void issue(String name) {
+                var certPath = Paths.get(easyRSADir, "pki", "issued", name + ".crt");
+                var keyPath = Paths.get(easyRSADir, "pki", "private", name + ".key");
+                // Key generation does not touch PKI index, so only signing is serialized
+                if (!Files.exists(keyPath)) {
+                    runEasyRSAAction(name, EasyRSAAction.genReq);
+                }
+                if (!Files.exists(certPath)) {
+                    pkiLock.lock();
+                    try {
+                        runEasyRSAAction(name, EasyRSAAction.signReq);
+                    } finally {
+                        pkiLock.unlock();
+                    }
+                }
+            }
+        }
+
+        public boolean isGzipProfiles() {
+            return isGzipProfiles;
+        }
+
+        /**
+         * @return gzip variant of profile or empty if profiles compression is disabled.
+         * Variant is prepared on profile creation, profiles created before start are compressed on first request
+         */
+        public Optional<byte[]> getGzipProfile(VpnProfile profile) {
+            if (!isGzipProfiles) {
+                return Optional.empty();
             }
-            //TODO process status and check index.txt
             try {
-                Files.delete(Paths.get(profile.get().profile()));
-            } catch (IOException e) {
+                var gzip = gzipProfiles.computeIfAbsent(profile.hash(), hash -> {
+                    try {
+                        return gzip(Files.readAllBytes(Paths.get(profile.profile())));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                // Profile could be removed while it was compressed
+                if (!profilesByHash.containsKey(profile.hash())) {
+                    gzipProfiles.remove(profile.hash());
+                }
+                return Optional.of(gzip);
+            } catch (UncheckedIOException e) {
                 System.out.println(e.getMessage());
+                return Optional.empty();
             }
         }
 
-        private List<VpnProfile> getProfiles() {
-            try (Stream<Path> list = Files.list(Paths.get(outputDir))) {
-                return list.map(path -> getProfileByPath(path))
-                        .sorted(Comparator.comparing(p -> p.name)).toList();
+        private byte[] renderProfile(String name) throws IOException {
+            String cert = "";
+            String key = "";
+            if (!isDryRun) {
+                cert = Files.readString(Paths.get(easyRSADir, "pki", "issued", name + ".crt"), UTF_8);
+                key = Files.readString(Paths.get(easyRSADir, "pki", "private", name + ".key"), UTF_8);
+            } else {
+                //Random string provides different hashes
+                cert = UUID.randomUUID().toString();
+                key = UUID.randomUUID().toString();
+            }
+            return template.render(Map.of("CERT", cert, "KEY", key, "NAME", name));
+        }
+
+        private VpnProfile writeProfile(String name, String hash, byte[] profileContent) throws IOException {
+            Path profile = getOVPNFile(name, hash).orElseThrow();
+            if (isSharded) {
+                Files.createDirectories(profile.getParent());
+            }
+            writeAtomically(profile, profileContent);
+            if (isGzipProfiles) {
+                gzipProfiles.put(hash, gzip(profileContent));
+            }
+            var vpnProfile = getProfileByPath(profile);
+            indexProfile(vpnProfile);
+            return vpnProfile;
+        }
+
+        /**
+         * Writes content to temp file in the same dir, syncs it to disk and moves it into place,
+         * so readers never see partially written profile and crash leaves only a temp file which is removed on next start
+         */
+        private static void writeAtomically(Path target, byte[] content) throws IOException {
+            var temp = target.resolveSibling(TEMP_PREFIX + UUID.randomUUID() + TEMP_SUFFIX);
+            try {
+                try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                    var buffer = ByteBuffer.wrap(content);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(true);
+                }
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            // Makes the rename itself durable. Not every platform allows to sync a directory
+            try (var dir = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+                dir.force(true);
             } catch (IOException e) {
-                System.out.println(e.getMessage());
+                // Rename is still atomic, only its durability is not guaranteed
             }
-            return Collections.emptyList();
         }
 
-        public void updateProfiles() {
-            try (var list = Files.list(Paths.get(outputDir))) {
-                list.forEach(path -> {
+        /**
+         * Removes temp files left by writes interrupted by crash
+         */
+        private void removeTempFiles() {
+            try (var list = listOutputFiles()) {
+                list.filter(OVPNManager::isTempFile).forEach(path -> {
                     try {
                         Files.deleteIfExists(path);
+                        System.out.println("Removed incomplete profile file %s".formatted(path));
                     } catch (IOException e) {
                         System.out.println(e.getMessage());
                     }
                 });
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        /**
+         * Lists files of output dir and its shard subdirs, whatever layout is configured, so files left from the other layout are found too
+         */
+        private Stream<Path> listOutputFiles() throws IOException {
+            var outputPath = Paths.get(outputDir);
+            return Files.walk(outputPath, 2)
+                    .filter(path -> path.getParent() != null && (path.getParent().equals(outputPath) || isShardDir(path.getParent())))
+                    .filter(Files::isRegularFile);
+        }
+
+        private boolean isShardDir(Path path) {
+            var fileName = path.getFileName().toString();
+            return path.getParent() != null && path.getParent().equals(Paths.get(outputDir))
+                    && fileName.matches("[0-9a-f]{%d}".formatted(SHARD_PREFIX_LENGTH)) && Files.isDirectory(path);
+        }
+
+        /**
+         * Moves profiles stored according to the other layout to their places, so layout could be switched by restart with another --layout.
+         * Shard dirs left empty after migration to flat layout are removed
+         */
+        private void migrateLayout() {
+            List<Path> misplaced;
+            try (var list = listOutputFiles()) {
+                misplaced = list.filter(this::isProfileFile)
+                        .filter(path -> {
+                            var profile = getProfileByPath(path);
+                            return !path.equals(getOVPNFile(profile.name(), profile.hash()).orElseThrow());
+                        })
+                        .toList();
+            } catch (IOException e) {
+                System.out.println("Unable to migrate profiles layout. Reason:\n" + e.getMessage());
+                return;
+            }
+            var migrated = 0;
+            for (Path path : misplaced) {
+                var profile = getProfileByPath(path);
+                var target = getOVPNFile(profile.name(), profile.hash()).orElseThrow();
                 try {
-                    Files.readAllLines(Paths.get(easyRSADir, "pki", "index.txt"), UTF_8).stream()
-                            .filter(line -> line.charAt(0) == 'V' && line.contains("/CN="))
-                            .map(line -> line.substring(line.indexOf("/CN=") + 4))
-                            //TODO remove hardcode for server certificate
-                            .filter(name -> !"server".equals(name))
-                            .forEach(name -> createProfile(name));
+                    Files.createDirectories(target.getParent());
+                    Files.move(path, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    migrated++;
+                } catch (IOException e) {
+                    System.out.println("Unable to move %s to %s. Reason: %s".formatted(path, target, e.getMessage()));
+                }
+            }
+            if (!isSharded) {
+                try (var list = Files.list(Paths.get(outputDir))) {
+                    list.filter(this::isShardDir).filter(VPNMan::isEmpty).forEach(dir -> {
+                        try {
+                            Files.deleteIfExists(dir);
+                        } catch (IOException e) {
+                            System.out.println(e.getMessage());
+                        }
+                    });
                 } catch (IOException e) {
                     System.out.println(e.getMessage());
                 }
+            }
+            if (migrated > 0) {
+                System.out.println("Moved %d profiles to %s layout".formatted(migrated, isSharded ? LAYOUT_SHARDED : LAYOUT_FLAT));
+            }
+        }
+
+        private static boolean isTempFile(Path path) {
+            var fileName = path.getFileName().toString();
+            return fileName.startsWith(TEMP_PREFIX) && fileName.endsWith(TEMP_SUFFIX);
+        }
+
+        /**
+         * Creates profiles in parallel on worker pool. Progress is reported as soon as each profile is processed
+         */
+        public List<ProfileResult> createProfiles(Collection<String> names, Progress progress) {
+            var requested = names.stream().distinct().toList();
+            progress.total(requested.size());
+            var tasks = requested.stream().map(name -> CompletableFuture.supplyAsync(() -> {
+                ProfileResult result;
+                try {
+                    result = name.isBlank() ? new ProfileResult(name, null, "Name is empty") : createProfile(name)
+                            .map(profile -> new ProfileResult(name, profile, null))
+                            .orElseGet(() -> new ProfileResult(name, null, "Unable to create profile"));
+                } catch (RuntimeException e) {
+                    result = new ProfileResult(name, null, e.getMessage());
+                }
+                progress.done(name, result.error());
+                return result;
+            }, workers)).toList();
+            return tasks.stream().map(CompletableFuture::join).toList();
+        }
+
+        private RevokeResult deleteProfile(String name) {
+            return revokeProfiles(List.of(name), Progress.NONE).get(0);
+        }
+
+        /**
+         * Revokes certificates one by one, regenerates CRL once and removes profiles of revoked certificates.
+         * Status of each name is taken from index.txt after revocation, profiles are kept if CRL is not regenerated
+         */
+        public List<RevokeResult> revokeProfiles(Collection<String> names, Progress progress) {
+            var requested = names.stream().distinct().toList();
+            progress.total(requested.size());
+            var results = new LinkedHashMap<String, RevokeResult>();
+            // Each name is reported as soon as its result is known, revoked ones only after CRL is regenerated
+            Consumer<RevokeResult> report = result -> {
+                results.put(result.name(), result);
+                progress.done(result.name(), result.error());
+            };
+            // Files are collected before revocation, as index watcher hides revoked profiles
+            var files = new HashMap<String, List<VpnProfile>>();
+            // Name locks are always taken before pkiLock
+            var nameLocks = lockNames(requested);
+            try {
+                pkiLock.lock();
+                try {
+                    var certificates = certificateIndex.byName();
+                    var revoked = new ArrayList<String>();
+                    for (String name : requested) {
+                        files.put(name, getProfilesByName(name));
+                        if (!isValid(certificates.get(name))) {
+                            if (files.get(name).isEmpty()) {
+                                report.accept(new RevokeResult(name, RevokeStatus.notFound, "Could not find profile `%s`".formatted(name)));
+                            } else {
+                                report.accept(new RevokeResult(name, RevokeStatus.deleted, null));
+                            }
+                        } else if (isDryRun) {
+                            report.accept(new RevokeResult(name, RevokeStatus.revoked, null));
+                        } else {
+                            var result = runEasyRSAAction(name, EasyRSAAction.revoke);
+                            if (result.exitCode() == 0) {
+                                revoked.add(name);
+                            } else {
+                                report.accept(new RevokeResult(name, RevokeStatus.failed, result.error().isEmpty() ? result.output() : result.error()));
+                            }
+                        }
+                    }
+                    if (!revoked.isEmpty() || isCrlOutdated) {
+                        var crl = runEasyRSAAction("", EasyRSAAction.genCrl);
+                        isCrlOutdated = crl.exitCode() != 0;
+                        var crlError = crl.exitCode() == 0
+                                ? null
+                                : "Certificate is revoked, but CRL is not regenerated: %s".formatted(crl.error().isEmpty() ? crl.output() : crl.error());
+                        certificates = certificateIndex.byName();
+                        for (String name : revoked) {
+                            if (!certificates.containsKey(name) || certificates.get(name).status() != 'R') {
+                                report.accept(new RevokeResult(name, RevokeStatus.failed, "Certificate is not revoked in index.txt"));
+                            } else if (crlError != null) {
+                                report.accept(new RevokeResult(name, RevokeStatus.failed, crlError));
+                            } else {
+                                report.accept(new RevokeResult(name, RevokeStatus.revoked, null));
+                            }
+                        }
+                    }
+                } finally {
+                    pkiLock.unlock();
+                }
+                results.values().stream()
+                        .filter(result -> result.status() == RevokeStatus.revoked || result.status() == RevokeStatus.deleted)
+                        .flatMap(result -> files.get(result.name()).stream())
+                        .forEach(this::removeProfileFile);
+            } finally {
+                unlockNames(nameLocks);
+            }
+            return requested.stream().map(results::get).toList();
+        }
+
+        private static boolean isValid(CertificateIndex.Entry certificate) {
+            return certificate != null && certificate.status() == 'V';
+        }
+
+        private List<VpnProfile> getProfiles() {
+            return List.copyOf(sortedProfiles);
+        }
+
+        /**
+         * Returns page of profiles sorted by name. Only profiles which name starts with prefix are counted
+         */
+        private ProfilesPage getProfiles(String prefix, int offset, int limit) {
+            var matched = prefix.isEmpty()
+                    ? sortedProfiles
+                    : sortedProfiles.subSet(new VpnProfile(prefix, "", ""), true, new VpnProfile(prefix + Character.MAX_VALUE, "", ""), false);
+            var page = matched.stream().skip(offset).limit(limit).toList();
+            return new ProfilesPage(page, matched.size());
+        }
+
+        /**
+         * Reconciles output dir with easyrsa index. Only missing or changed profiles are written, new file is written before
+         * the old one is removed, so every valid profile stays downloadable during update
+         */
+        public UpdateResult updateProfiles(Progress progress) {
+            var indexPath = Paths.get(easyRSADir, "pki", "index.txt");
+            if (!Files.exists(indexPath)) {
+                System.out.println("Unable to update profiles. %s does not exist".formatted(indexPath));
+                return new UpdateResult(0, 0, 0, 0);
+            }
+            var names = certificateIndex.byName().entrySet().stream()
+                    .filter(entry -> isValid(entry.getValue()))
+                    .map(Map.Entry::getKey)
+                    //TODO remove hardcode for server certificate
+                    .filter(name -> !"server".equals(name))
+                    .collect(Collectors.toSet());
+            progress.total(names.size());
+            var regenerated = new AtomicInteger();
+            var unchanged = new AtomicInteger();
+            var failed = new AtomicInteger();
+            // Hash of the current render by name, files with other hashes are stale
+            var actualHashes = new ConcurrentHashMap<String, String>();
+            var tasks = names.stream().map(name -> CompletableFuture.runAsync(() -> {
+                try {
+                    if (reconcileProfile(name, actualHashes)) {
+                        regenerated.incrementAndGet();
+                    } else {
+                        unchanged.incrementAndGet();
+                    }
+                    progress.done(name, null);
+                } catch (IOException | RuntimeException e) {
+                    failed.incrementAndGet();
+                    System.out.println("Unable to update profile `%s`. Reason: %s".formatted(name, e.getMessage()));
+                    progress.done(name, e.getMessage());
+                }
+            }, workers)).toList();
+            tasks.forEach(CompletableFuture::join);
+            var removed = 0;
+            // Output dir is listed instead of the index, so profiles hidden by revocation are removed as well
+            List<VpnProfile> files;
+            try (var list = listOutputFiles()) {
+                files = list.filter(this::isProfileFile).map(this::getProfileByPath).toList();
             } catch (IOException e) {
                 System.out.println(e.getMessage());
+                files = List.of();
             }
+            for (VpnProfile profile : files) {
+                var lock = nameLock(profile.name());
+                lock.lock();
+                try {
+                    // Profile could be created after names were collected, so index is checked again under the lock
+                    var actualHash = actualHashes.get(profile.name());
+                    var isStale = "server".equals(profile.name())
+                            || !isValid(certificateIndex.byName().get(profile.name()))
+                            || actualHash != null && !actualHash.equals(profile.hash());
+                    if (isStale && Files.exists(Paths.get(profile.profile()))) {
+                        removeProfileFile(profile);
+                        removed++;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            var result = new UpdateResult(regenerated.get(), unchanged.get(), removed, failed.get());
+            System.out.println("Profiles updated: %s".formatted(result));
+            return result;
         }
 
-        private int runEasyRSAAction(String name, EasyRSAAction action) {
+        /**
+         * Returns true if profile was written, false if actual profile already exists. Hash of the actual profile is put to actualHashes
+         */
+        private boolean reconcileProfile(String name, Map<String, String> actualHashes) throws IOException {
+            var lock = nameLock(name);
+            lock.lock();
+            try {
+                ensureCertificate(name);
+                var content = renderProfile(name);
+                var hash = hashBytes(content);
+                actualHashes.put(name, hash);
+                var isActual = findActual(name, hash).isPresent();
+                if (!isActual) {
+                    writeProfile(name, hash, content);
+                }
+                for (VpnProfile stale : getProfilesByName(name)) {
+                    if (!stale.hash().equals(hash)) {
+                        removeProfileFile(stale);
+                    }
+                }
+                return !isActual;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private List<VpnProfile> getProfilesByName(String name) {
+            return List.copyOf(sortedProfiles.subSet(new VpnProfile(name, "", ""), true, new VpnProfile(name, "", String.valueOf(Character.MAX_VALUE)), true));
+        }
+
+        private void removeProfileFile(VpnProfile profile) {
+            try {
+                Files.deleteIfExists(Paths.get(profile.profile()));
+                unindexProfile(profile);
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        /**
+         * Runs easyrsa and pumps its stdin/stdout/stderr concurrently. Confirmation is sent as soon as easyrsa asks for it.
+         * Process is killed with its children if it does not finish within EASYRSA_TIMEOUT. stdin is closed once it is not needed,
+         * so openssl asking for a passphrase fails instead of waiting for input
+         */
+        private EasyRSAResult runEasyRSAAction(String name, EasyRSAAction action) {
             ProcessBuilder pb = switch (action) {
-                case create -> new ProcessBuilder("./easyrsa", "build-client-full", name, "nopass");
+                case genReq -> new ProcessBuilder("./easyrsa", "--batch", "gen-req", name, "nopass");
+                case signReq -> new ProcessBuilder("./easyrsa", "sign-req", "client", name);
                 case revoke -> new ProcessBuilder("./easyrsa", "revoke", name);
+                case genCrl -> new ProcessBuilder("./easyrsa", "gen-crl");
             };
             pb.directory(Paths.get(easyRSADir).toFile());
+            long start = System.nanoTime();
             try {
                 Process process = pb.start();
-                Thread.sleep(200);
-                process.getOutputStream().write("yes\n".getBytes(UTF_8));
-                process.getOutputStream().flush();
-                int exitCode = process.waitFor();
-                System.out.println("Exit code for action: %s, code is %d".formatted(action, exitCode));
-                return exitCode;
-            } catch (IOException | InterruptedException e) {
+                // Only sign-req and revoke ask for confirmation
+                var confirmed = new AtomicBoolean(action != EasyRSAAction.signReq && action != EasyRSAAction.revoke);
+                if (confirmed.get()) {
+                    closeQuietly(process.getOutputStream());
+                }
+                var output = CompletableFuture.supplyAsync(() -> pump(process.getInputStream(), process, confirmed), processIO);
+                var error = CompletableFuture.supplyAsync(() -> pump(process.getErrorStream(), process, confirmed), processIO);
+                int exitCode;
+                var timeoutError = "";
+                if (process.waitFor(EASYRSA_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                    exitCode = process.exitValue();
+                } else {
+                    // Descendants are collected before the shell is killed, otherwise openssl would be reparented and keep running
+                    process.descendants().forEach(ProcessHandle::destroyForcibly);
+                    process.destroyForcibly();
+                    closeQuietly(process.getOutputStream());
+                    timeoutError = "Action %s for `%s` timed out after %s".formatted(action, name, EASYRSA_TIMEOUT);
+                    System.out.println(timeoutError);
+                    exitCode = -1;
+                }
+                var errorText = timeoutError.isEmpty() ? awaitOutput(error) : (timeoutError + "\n" + awaitOutput(error)).strip();
+                var result = new EasyRSAResult(exitCode, awaitOutput(output), errorText, Duration.ofNanos(System.nanoTime() - start));
+                System.out.println("Exit code for action: %s, code is %d, took %d ms".formatted(action, exitCode, result.duration().toMillis()));
+                if (exitCode != 0) {
+                    System.out.println(result.error().isEmpty() ? result.output() : result.error());
+                }
+                return result;
+            } catch (IOException e) {
                 System.out.println(e.getMessage());
+                return new EasyRSAResult(-1, "", e.getMessage(), Duration.ofNanos(System.nanoTime() - start));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new EasyRSAResult(-1, "", e.getMessage(), Duration.ofNanos(System.nanoTime() - start));
             }
-            return -1;
         }
 
+        private static String awaitOutput(CompletableFuture<String> pump) throws InterruptedException {
+            try {
+                return pump.get(EASYRSA_OUTPUT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                return "Output is incomplete, stream was not closed within %s".formatted(EASYRSA_OUTPUT_TIMEOUT);
+            } catch (ExecutionException e) {
+                return e.getCause().getMessage();
+            }
+        }
+
+        private static void closeQuietly(Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        /**
+         * Reads stream to the end and answers `yes` once easyrsa prompts for confirmation on it
+         */
+        private String pump(InputStream stream, Process process, AtomicBoolean confirmed) {
+            var captured = new StringBuilder();
+            var buffer = new char[1024];
+            try (var reader = new InputStreamReader(stream, UTF_8)) {
+                int read;
+                while ((read = reader.read(buffer)) != -1) {
+                    int from = Math.max(0, captured.length() - EASYRSA_CONFIRM_PROMPT.length());
+                    captured.append(buffer, 0, read);
+                    if (captured.indexOf(EASYRSA_CONFIRM_PROMPT, from) >= 0 && confirmed.compareAndSet(false, true)) {
+                        var stdin = process.getOutputStream();
+                        stdin.write("yes\n".getBytes(UTF_8));
+                        stdin.close();
+                    }
+                }
+            } catch (IOException e) {
+                captured.append(e.getMessage());
+            }
+            return captured.toString();
+        }
 
         private Optional<Path> getOVPNFile(String name, String hash) {
             if (name == null || name.isEmpty()) {
@@ -378,31 +1660,203 @@ public class VPNMan {
             if (hash == null || hash.isEmpty()) {
                 return Optional.empty();
             }
-            return Optional.of(Paths.get(outputDir, getFileName(name, hash)));
+            if (isSharded) {
+                return Optional.of(Paths.get(outputDir, hash.substring(0, Math.min(SHARD_PREFIX_LENGTH, hash.length())), getFileName(name, hash)));
+            }
+            return Optional.of(Paths.get(outputDir, getFileName(name, hash)));
+        }
+
+        private VpnProfile getProfileByPath(Path path) {
+            var parts = path.getFileName().toString().split(DELIMETER);
+            return new VpnProfile(parts[1].substring(0, parts[1].length() - 5), path.toAbsolutePath().toString(), parts[0]);
+        }
+
+        private boolean isProfileFile(Path path) {
+            var fileName = path.getFileName().toString();
+            return !isTempFile(path) && fileName.endsWith(EXTENSION) && fileName.split(DELIMETER).length == 2;
+        }
+
+        /**
+         * Reconciles profile index with outputDir. Index is not cleared, so lookups keep working while the dir is listed
+         * after lost watcher events
+         */
+        private void loadProfiles() {
+            Set<VpnProfile> files;
+            try (var list = listOutputFiles()) {
+                files = list.filter(this::isProfileFile).map(this::getProfileByPath).collect(Collectors.toSet());
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+            for (VpnProfile profile : getProfiles()) {
+                if (!files.contains(profile)) {
+                    syncProfile(profile);
+                }
+            }
+            for (VpnProfile profile : files) {
+                if (!profile.equals(profilesByHash.get(profile.hash()))) {
+                    syncProfile(profile);
+                }
+            }
+            unindexRevoked();
+            System.out.println("Loaded %d profiles from %s".formatted(profilesByHash.size(), outputDir));
+        }
+
+        /**
+         * Indexes or unindexes profile by the current state of its file. Name lock keeps write or removal of the same name
+         * from running between the check and the index update
+         */
+        private void syncProfile(VpnProfile profile) {
+            var lock = nameLock(profile.name());
+            lock.lock();
+            try {
+                if (Files.exists(Paths.get(profile.profile())) && !isRevoked(profile.name())) {
+                    indexProfile(profile);
+                } else {
+                    unindexProfile(profile);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Watches outputDir and pki/index.txt for changes made outside the API (files copied or removed by hand,
+         * easyrsa run manually) and applies them to the profile index.
+         */
+        private void watchProfiles() {
+            var outputPath = Paths.get(outputDir);
+            var pkiPath = Paths.get(easyRSADir, "pki");
+            WatchService watchService;
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+                outputPath.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                try (var list = Files.list(outputPath)) {
+                    for (Path shard : list.filter(this::isShardDir).toList()) {
+                        watchShard(watchService, shard);
+                    }
+                }
+                if (Files.isDirectory(pkiPath)) {
+                    pkiPath.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                }
+            } catch (IOException e) {
+                System.out.println("Unable to watch profiles dir. Out-of-band changes will not be tracked. Reason:\n" + e.getMessage());
+                return;
+            }
+            var watcher = new Thread(() -> {
+                while (true) {
+                    WatchKey key;
+                    try {
+                        key = watchService.take();
+                    } catch (InterruptedException | ClosedWatchServiceException e) {
+                        return;
+                    }
+                    var dir = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            loadProfiles();
+                        } else if (dir.equals(pkiPath)) {
+                            if ("index.txt".equals(event.context().toString())) {
+                                unindexRevoked();
+                            }
+                        } else if (dir.equals(outputPath) && isShardDir(dir.resolve((Path) event.context()))) {
+                            var shard = dir.resolve((Path) event.context());
+                            try {
+                                watchShard(watchService, shard);
+                                // Files could be added before the dir was registered
+                                try (var list = Files.list(shard)) {
+                                    list.forEach(path -> applyProfileEvent(StandardWatchEventKinds.ENTRY_CREATE, path));
+                                }
+                            } catch (IOException e) {
+                                System.out.println(e.getMessage());
+                            }
+                        } else {
+                            applyProfileEvent(event.kind(), dir.resolve((Path) event.context()));
+                        }
+                    }
+                    key.reset();
+                }
+            }, "profiles-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+
+        private void watchShard(WatchService watchService, Path shard) throws IOException {
+            shard.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+
+        private void applyProfileEvent(WatchEvent.Kind<?> kind, Path path) {
+            if (!isProfileFile(path)) {
+                return;
+            }
+            var profile = getProfileByPath(path);
+            // Events are delivered with a delay, so trust the file system state over the event kind
+            if (Files.exists(path)) {
+                // Modification of hidden profile of revoked certificate must not bring it back
+                if (!profile.equals(profilesByHash.get(profile.hash())) && !isRevoked(profile.name())) {
+                    indexProfile(profile);
+                }
+            } else if (kind != StandardWatchEventKinds.ENTRY_CREATE) {
+                unindexProfile(profile);
+            }
+        }
+
+        /**
+         * Removes profiles whose certificates were revoked in easyrsa index from the profile index. Files are kept.
+         */
+        private void unindexRevoked() {
+            certificateIndex.byName().forEach((name, certificate) -> {
+                if (certificate.status() != 'R') {
+                    return;
+                }
+                var profiles = getProfilesByName(name);
+                if (!profiles.isEmpty()) {
+                    System.out.println("Certificate for `%s` is revoked. Profile is hidden".formatted(name));
+                    profiles.forEach(this::unindexProfile);
+                }
+            });
+        }
+
+        private boolean isRevoked(String name) {
+            var certificate = certificateIndex.byName().get(name);
+            return certificate != null && certificate.status() == 'R';
+        }
+
+        private void indexProfile(VpnProfile profile) {
+            var previous = profilesByHash.put(profile.hash(), profile);
+            if (previous != null) {
+                sortedProfiles.remove(previous);
+            }
+            sortedProfiles.add(profile);
+            profilesByName.put(profile.name(), profile);
+            profilesVersion.incrementAndGet();
         }
 
-        private VpnProfile getProfileByPath(Path path) {
-            var parts = path.getFileName().toString().split(DELIMETER);
-            return new VpnProfile(parts[1].substring(0, parts[1].length() - 5), path.toAbsolutePath().toString(), parts[0]);
+        public long getProfilesVersion() {
+            return profilesVersion.get();
+        }
+
+        private void unindexProfile(VpnProfile profile) {
+            if (profilesByHash.remove(profile.hash(), profile)) {
+                sortedProfiles.remove(profile);
+                gzipProfiles.remove(profile.hash());
+            }
+            profilesByName.remove(profile.name(), profile);
+            // Another file for the same name may still be present (e.g. profile was recreated with different content)
+            var sameName = sortedProfiles.ceiling(new VpnProfile(profile.name(), "", ""));
+            if (sameName != null && sameName.name().equals(profile.name())) {
+                profilesByName.putIfAbsent(sameName.name(), sameName);
+            }
+            profilesVersion.incrementAndGet();
         }
 
         private Optional<VpnProfile> findByNameOrHash(String value, boolean isName) {
             if (value == null || value.isEmpty()) {
                 return Optional.empty();
             }
-            try (var list = Files.list(Paths.get(outputDir))) {
-                return list.filter(path -> {
-                    var parts = path.getFileName().toString().split(DELIMETER);
-                    if (parts.length != 2) {
-                        return false;
-                    } else {
-                        return isName ? parts[1].startsWith(value) : value.equals(parts[0]);
-                    }
-                }).map(path -> getProfileByPath(path)).findFirst();
-            } catch (IOException e) {
-                System.out.println(e.getMessage());
-            }
-            return Optional.empty();
+            return Optional.ofNullable(isName ? profilesByName.get(value) : profilesByHash.get(value));
         }
 
         public Optional<VpnProfile> findByHash(String hash) {
@@ -413,14 +1867,37 @@ public class VPNMan {
             return findByNameOrHash(name, true);
         }
 
+        /**
+         * @return profile with the newest file for each of names in the same order. Unknown names are skipped
+         */
+        private List<VpnProfile> findByNames(Collection<String> names) {
+            return names.stream().distinct()
+                    .map(name -> getProfilesByName(name).stream().max(Comparator.comparing(this::lastModified).thenComparing(VpnProfile::hash)))
+                    .flatMap(Optional::stream)
+                    .toList();
+        }
+
+        private FileTime lastModified(VpnProfile profile) {
+            try {
+                return Files.getLastModifiedTime(Paths.get(profile.profile()));
+            } catch (IOException e) {
+                // Removed meanwhile, any other file is preferred
+                return FileTime.fromMillis(0);
+            }
+        }
+
         private String getFileName(String name, String hash) {
             return hash + DELIMETER + name + EXTENSION;
         }
 
         public String hashString(String s) {
+            return hashBytes(s.getBytes(UTF_8));
+        }
+
+        public String hashBytes(byte[] bytes) {
             try {
                 MessageDigest md = MessageDigest.getInstance("SHA-256");
-                byte[] hash = md.digest(s.getBytes(UTF_8));
+                byte[] hash = md.digest(bytes);
                 return HexFormat.of().formatHex(hash);
             } catch (NoSuchAlgorithmException e) {
                 System.out.println(e.getMessage());
@@ -509,7 +1986,8 @@ public class VPNMan {
                 appConfig.put(PARAM_TEMPLATE, templatePath.toAbsolutePath().toString());
                 try {
                     filledTemplate = Files.readString(templatePath);
-                    if (!filledTemplate.contains("${CERT}") || !filledTemplate.contains("${KEY}")) {
+                    var template = Template.compile(filledTemplate);
+                    if (!template.hasSlot("CERT") || !template.hasSlot("KEY")) {
                         System.out.println("Template file does not contain placeholders for client key (${KEY}) and cert(${CERT})");
                         return;
                     }
@@ -570,11 +2048,12 @@ public class VPNMan {
             }
 
 
-            filledTemplate = defaultTemplate
-                    .replace("${VPN_SERVER_IP}", appConfig.getProperty(PARAM_VPNURL))
-                    .replace("${VPN_SERVER_PORT}", appConfig.getProperty(PARAM_VPNPORT))
-                    .replace("${CA_CERTIFICATE}", ca)
-                    .replace("${TLSAUTH_CERTIFICATE}", tlsauth);
+            // Client key and cert are left for profile rendering
+            filledTemplate = Template.compile(defaultTemplate).renderString(Map.of(
+                    "VPN_SERVER_IP", appConfig.getProperty(PARAM_VPNURL),
+                    "VPN_SERVER_PORT", appConfig.getProperty(PARAM_VPNPORT),
+                    "CA_CERTIFICATE", ca,
+                    "TLSAUTH_CERTIFICATE", tlsauth));
         }
 
         if (!appConfig.containsKey(PARAM_URL)) {
@@ -590,6 +2069,9 @@ public class VPNMan {
             System.out.println("--%s is not specified. Will use generated one.".formatted(PARAM_CONTEXT));
             appConfig.put(PARAM_CONTEXT, secretContext);
         }
+        if (!appConfig.containsKey(PARAM_MAX_BODY)) {
+            appConfig.put(PARAM_MAX_BODY, DEFAULT_MAX_BODY.toString());
+        }
         //TODO save secret context to a file
         boolean isStaticDirOK = true;
         if (appConfig.containsKey(PARAM_STATIC)) {
@@ -618,13 +2100,30 @@ public class VPNMan {
             }
         }
 
-        Optional<OVPNManager> ovpnManager = OVPNManager.build(appConfig.getProperty(PARAM_EASYRSA), filledTemplate, appConfig.getProperty(PARAM_OUTPUT), isDev);
+        var httpThreads = Integer.parseInt(appConfig.getProperty(PARAM_HTTP_THREADS, DEFAULT_HTTP_THREADS.toString()));
+        var httpQueue = Integer.parseInt(appConfig.getProperty(PARAM_HTTP_QUEUE, DEFAULT_HTTP_QUEUE.toString()));
+        if (httpThreads < 1 || httpQueue < 0) {
+            System.out.println("--%s must be at least 1 and --%s must not be negative".formatted(PARAM_HTTP_THREADS, PARAM_HTTP_QUEUE));
+            return;
+        }
+
+        if (!appConfig.containsKey(PARAM_WORKERS)) {
+            appConfig.put(PARAM_WORKERS, String.valueOf(Runtime.getRuntime().availableProcessors()));
+        }
+        var keyPoolSize = Integer.parseInt(appConfig.getProperty(PARAM_KEY_POOL, "0"));
+        Optional<OVPNManager> ovpnManager = OVPNManager.build(appConfig.getProperty(PARAM_EASYRSA), filledTemplate, appConfig.getProperty(PARAM_OUTPUT), isDev,
+                Integer.parseInt(appConfig.getProperty(PARAM_WORKERS)), appConfig.getProperty(PARAM_ISSUER, OVPNManager.ISSUER_EASYRSA),
+                keyPoolSize, Integer.parseInt(appConfig.getProperty(PARAM_KEY_POOL_LOW, String.valueOf(keyPoolSize / 2))),
+                Boolean.parseBoolean(appConfig.getProperty(PARAM_GZIP_PROFILES, "true")),
+                appConfig.getProperty(PARAM_LAYOUT, OVPNManager.LAYOUT_FLAT));
         if (ovpnManager.isEmpty()) {
             System.out.println("Unable to initialize app. Invalid parameters");
             return;
         }
         OVPNServer ovpnServer = new OVPNServer(appConfig.getProperty(PARAM_URL), Integer.parseInt(appConfig.getProperty(PARAM_PORT)),
-                appConfig.getProperty(PARAM_CONTEXT), appConfig.getProperty(PARAM_STATIC), ovpnManager.get());
+                Integer.parseInt(appConfig.getProperty(PARAM_BACKLOG, "0")), appConfig.getProperty(PARAM_CONTEXT), appConfig.getProperty(PARAM_STATIC),
+                Long.parseLong(appConfig.getProperty(PARAM_MAX_BODY)), appConfig.getProperty(PARAM_HTTP_EXECUTOR, OVPNServer.EXECUTOR_CACHED),
+                httpThreads, httpQueue, ovpnManager.get());
         ovpnServer.start();
         System.out.println();
     }
@@ -657,252 +2156,1122 @@ public class VPNMan {
             }
         } else {
             try {
-                return Files.size(path) == 0;
+                return Files.size(path) == 0;
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        var compressed = new ByteArrayOutputStream();
+        try (var gzipOut = new GZIPOutputStream(compressed)) {
+            gzipOut.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static void createDirAndSetProperty(String property, Path path, Properties props) {
+        try {
+            Files.createDirectories(path);
+            props.put(property, path.toAbsolutePath().toString());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Properties parseArguments(String[] args) {
+        Properties argMap = new Properties();
+        for (String arg : args) {
+            String[] splitArg = arg.split("=");
+            if (splitArg.length > 1) {
+                if (splitArg[0].length() > 2) {
+                    String key = splitArg[0].substring(2);
+                    argMap.put(key, splitArg[1]);
+                }
+            } else if (splitArg[0].equals("--%s".formatted(PARAM_HELP))) {
+                argMap.put(PARAM_HELP, "");
+            } else {
+                var key = splitArg[0].substring(2);
+                switch (key) {
+                    case PARAM_HELP -> argMap.put(PARAM_HELP, "");
+                    case PARAM_API -> argMap.put(PARAM_API, "");
+                    case PARAM_DEFAULT_TEMPLATE -> argMap.put(PARAM_DEFAULT_TEMPLATE, "");
+                    case PARAM_IS_DEV -> argMap.put(PARAM_IS_DEV, "");
+                }
+            }
+        }
+        return argMap;
+    }
+
+    /**
+     * Parsed easyrsa pki/index.txt. File is read in a streaming fashion and byte offset of the last complete line is kept,
+     * so next refresh parses only appended lines (new certificates). File replaced or truncated by openssl (revocation) is parsed again
+     */
+    private static class CertificateIndex {
+        /**
+         * index.txt line: status (V, R or E), expiry date, revocation date, serial, file name and subject
+         */
+        record Entry(char status, String expires, String revoked, String serial, String subject) {
+            String name() {
+                var start = subject.indexOf("/CN=");
+                if (start < 0) {
+                    return null;
+                }
+                var end = subject.indexOf('/', start + 4);
+                return subject.substring(start + 4, end < 0 ? subject.length() : end);
+            }
+        }
+
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private final Path path;
+        private long offset;
+        private Object fileKey;
+        // Entry deciding status of each name: any valid certificate, otherwise the last one
+        private volatile Map<String, Entry> byName = new ConcurrentHashMap<>();
+
+        CertificateIndex(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * @return entries by certificate name (CN) after applying changes made since previous call
+         */
+        Map<String, Entry> byName() {
+            refresh();
+            return Collections.unmodifiableMap(byName);
+        }
+
+        private synchronized void refresh() {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // No index yet
+                offset = 0;
+                fileKey = null;
+                byName = new ConcurrentHashMap<>();
+                return;
+            }
+            var isReplaced = fileKey == null || !fileKey.equals(attributes.fileKey()) || attributes.size() < offset;
+            if (!isReplaced && attributes.size() == offset) {
+                return;
+            }
+            var entries = isReplaced ? new ConcurrentHashMap<String, Entry>() : byName;
+            var position = isReplaced ? 0 : offset;
+            try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                position = parse(channel, position, entries);
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+            offset = position;
+            fileKey = attributes.fileKey();
+            // Rebuilt index is published at once, so readers never see it half-filled
+            byName = entries;
+        }
+
+        /**
+         * Parses complete lines starting from position
+         *
+         * @return position after the last complete line
+         */
+        private static long parse(FileChannel channel, long position, Map<String, Entry> entries) throws IOException {
+            var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            var line = new ByteArrayOutputStream(256);
+            var consumed = position;
+            channel.position(position);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    var b = buffer.get();
+                    if (b != '\n') {
+                        line.write(b);
+                        continue;
+                    }
+                    consumed += line.size() + 1;
+                    var entry = parseLine(line.toString(UTF_8));
+                    line.reset();
+                    if (entry != null && entry.name() != null) {
+                        entries.merge(entry.name(), entry, (previous, current) -> previous.status() == 'V' ? previous : current);
+                    }
+                }
+                buffer.clear();
+            }
+            // Incomplete last line is parsed when it is finished
+            return consumed;
+        }
+
+        private static Entry parseLine(String line) {
+            var fields = line.split("\t", -1);
+            if (fields.length < 6 || fields[0].length() != 1) {
+                return null;
+            }
+            return new Entry(fields[0].charAt(0), fields[1], fields[2], fields[3], fields[5]);
+        }
+    }
+
+    /**
+     * Issues client certificates in JVM with CA key from easyrsa pki dir. Produces the same artifacts as `easyrsa build-client-full`:
+     * private/${name}.key, issued/${name}.crt, certs_by_serial/${serial}.pem and index.txt entry, so easyrsa can revoke them later.
+     * Only unencrypted CA key is supported: RSA or EC in PKCS#8, or RSA in PKCS#1.
+     * EASYRSA_KEY_SIZE, EASYRSA_CERT_EXPIRE and EASYRSA_DIGEST are taken from environment or vars file. Other algorithms than
+     * `rsa` and subjects other than `cn_only` are not supported, easyrsa should be used for them.
+     */
+    private static class NativeIssuer implements OVPNManager.CertificateIssuer {
+        // easyrsa defaults of EASYRSA_KEY_SIZE, EASYRSA_CERT_EXPIRE (days) and EASYRSA_DIGEST
+        private static final String DEFAULT_KEY_SIZE = "2048";
+        private static final String DEFAULT_CERT_EXPIRE = "825";
+        private static final String DEFAULT_DIGEST = "sha256";
+        private static final String OID_RSA_ENCRYPTION = "1.2.840.113549.1.1.1";
+        // Signature algorithm OIDs by digest: RSA and ECDSA
+        private static final Map<String, List<String>> OID_SIGNATURES = Map.of(
+                "sha256", List.of("1.2.840.113549.1.1.11", "1.2.840.10045.4.3.2"),
+                "sha384", List.of("1.2.840.113549.1.1.12", "1.2.840.10045.4.3.3"),
+                "sha512", List.of("1.2.840.113549.1.1.13", "1.2.840.10045.4.3.4"));
+        private static final Pattern SET_VAR = Pattern.compile("^\\s*set_var\\s+(EASYRSA_\\w+)\\s+(.*?)\\s*$");
+        private static final String OID_COMMON_NAME = "2.5.4.3";
+        private static final String OID_SUBJECT_KEY_ID = "2.5.29.14";
+        private static final String OID_KEY_USAGE = "2.5.29.15";
+        private static final String OID_BASIC_CONSTRAINTS = "2.5.29.19";
+        private static final String OID_AUTHORITY_KEY_ID = "2.5.29.35";
+        private static final String OID_EXT_KEY_USAGE = "2.5.29.37";
+        private static final String OID_CLIENT_AUTH = "1.3.6.1.5.5.7.3.2";
+        private static final DateTimeFormatter INDEX_DATE = DateTimeFormatter.ofPattern("yyMMddHHmmss'Z'").withZone(ZoneOffset.UTC);
+        private static final DateTimeFormatter GENERALIZED_DATE = DateTimeFormatter.ofPattern("yyyyMMddHHmmss'Z'").withZone(ZoneOffset.UTC);
+
+        private final Path pkiDir;
+        private final ReentrantLock pkiLock;
+        private final OVPNManager.CertificateIssuer fallback;
+        private final PrivateKey caKey;
+        private final byte[] caSubject;
+        private final byte[] caKeyId;
+        private final String signatureAlgorithm;
+        private final byte[] signatureAlgorithmId;
+        private final SecureRandom random = new SecureRandom();
+        private final int keySize;
+        private final Duration certExpire;
+        // Set once before server is started
+        private KeyPool keyPool;
+
+        NativeIssuer(Path pkiDir, ReentrantLock pkiLock, OVPNManager.CertificateIssuer fallback) throws IOException, GeneralSecurityException {
+            this.pkiDir = pkiDir;
+            this.pkiLock = pkiLock;
+            this.fallback = fallback;
+            X509Certificate caCert;
+            try (var in = Files.newInputStream(pkiDir.resolve("ca.crt"))) {
+                caCert = (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(in);
+            }
+            this.caKey = readPrivateKey(Files.readString(pkiDir.resolve("private").resolve("ca.key"), UTF_8));
+            this.caSubject = caCert.getSubjectX500Principal().getEncoded();
+            var ski = caCert.getExtensionValue(OID_SUBJECT_KEY_ID);
+            // Extension value is OCTET STRING wrapping the encoded OCTET STRING with key id
+            this.caKeyId = ski == null ? null : Der.content(Der.content(ski));
+            var vars = readVars(pkiDir);
+            if (!"rsa".equals(vars.getOrDefault("EASYRSA_ALGO", "rsa")) || !"cn_only".equals(vars.getOrDefault("EASYRSA_DN", "cn_only"))) {
+                throw new GeneralSecurityException("Only EASYRSA_ALGO rsa and EASYRSA_DN cn_only are supported");
+            }
+            var digest = vars.getOrDefault("EASYRSA_DIGEST", DEFAULT_DIGEST);
+            if (!OID_SIGNATURES.containsKey(digest)) {
+                throw new GeneralSecurityException("Unsupported EASYRSA_DIGEST " + digest);
+            }
+            try {
+                this.keySize = Integer.parseInt(vars.getOrDefault("EASYRSA_KEY_SIZE", DEFAULT_KEY_SIZE));
+                this.certExpire = Duration.ofDays(Integer.parseInt(vars.getOrDefault("EASYRSA_CERT_EXPIRE", DEFAULT_CERT_EXPIRE)));
+            } catch (NumberFormatException e) {
+                throw new GeneralSecurityException("Invalid EASYRSA_KEY_SIZE or EASYRSA_CERT_EXPIRE: " + e.getMessage());
+            }
+            var hash = digest.toUpperCase();
+            if ("RSA".equals(caKey.getAlgorithm())) {
+                signatureAlgorithm = hash + "withRSA";
+                signatureAlgorithmId = Der.sequence(Der.oid(OID_SIGNATURES.get(digest).get(0)), Der.NULL);
+            } else if ("EC".equals(caKey.getAlgorithm())) {
+                signatureAlgorithm = hash + "withECDSA";
+                signatureAlgorithmId = Der.sequence(Der.oid(OID_SIGNATURES.get(digest).get(1)));
+            } else {
+                throw new GeneralSecurityException("Unsupported CA key algorithm " + caKey.getAlgorithm());
+            }
+            // Check that key matches certificate before issuing anything
+            var signature = Signature.getInstance(signatureAlgorithm);
+            signature.initSign(caKey);
+            signature.update(caSubject);
+            var signed = signature.sign();
+            signature.initVerify(caCert.getPublicKey());
+            signature.update(caSubject);
+            if (!signature.verify(signed)) {
+                throw new GeneralSecurityException("CA key does not match CA certificate");
+            }
+        }
+
+        void setKeyPool(KeyPool keyPool) {
+            this.keyPool = keyPool;
+        }
+
+        int keySize() {
+            return keySize;
+        }
+
+        /**
+         * Reads easyrsa settings the way easyrsa does: single vars file (EASYRSA_VARS_FILE, pki/vars or easyrsa dir vars)
+         * and environment, which wins over `set_var`
+         */
+        static Map<String, String> readVars(Path pkiDir) throws IOException {
+            var vars = new HashMap<String, String>();
+            var file = Optional.ofNullable(System.getenv("EASYRSA_VARS_FILE")).map(Paths::get)
+                    .or(() -> Stream.of(pkiDir.resolve("vars"), pkiDir.getParent().resolve("vars")).filter(Files::isRegularFile).findFirst());
+            if (file.isPresent()) {
+                for (String line : Files.readAllLines(file.get(), UTF_8)) {
+                    var matcher = SET_VAR.matcher(line);
+                    if (matcher.matches()) {
+                        vars.put(matcher.group(1), matcher.group(2).replaceAll("^[\"']|[\"']$", ""));
+                    }
+                }
+            }
+            System.getenv().forEach((name, value) -> {
+                if (name.startsWith("EASYRSA_")) {
+                    vars.put(name, value);
+                }
+            });
+            return vars;
+        }
+
+        static PrivateKey readPrivateKey(String pem) throws GeneralSecurityException {
+            if (pem.contains("ENCRYPTED")) {
+                throw new GeneralSecurityException("Encrypted CA key is not supported");
+            }
+            byte[] der = Base64.getMimeDecoder().decode(pem.replaceAll("-----[A-Z ]+-----", ""));
+            if (pem.contains("BEGIN RSA PRIVATE KEY")) {
+                // PKCS#1 key is wrapped to PKCS#8 PrivateKeyInfo
+                der = Der.sequence(Der.integer(BigInteger.ZERO), Der.sequence(Der.oid(OID_RSA_ENCRYPTION), Der.NULL), Der.octetString(der));
+            } else if (!pem.contains("BEGIN PRIVATE KEY")) {
+                throw new GeneralSecurityException("Unsupported CA key format");
+            }
+            var spec = new PKCS8EncodedKeySpec(der);
+            try {
+                return KeyFactory.getInstance("RSA").generatePrivate(spec);
+            } catch (InvalidKeySpecException e) {
+                return KeyFactory.getInstance("EC").generatePrivate(spec);
+            }
+        }
+
+        @Override
+        public void issue(String name) {
+            var certPath = pkiDir.resolve("issued").resolve(name + ".crt");
+            var keyPath = pkiDir.resolve("private").resolve(name + ".key");
+            if (Files.exists(certPath) && Files.exists(keyPath)) {
+                return;
+            }
+            if (Files.exists(keyPath)) {
+                // Request for existing key should be signed by easyrsa
+                fallback.issue(name);
+                return;
+            }
+            try {
+                var keyPair = keyPool == null ? null : keyPool.take(keyPath).orElse(null);
+                if (keyPair == null) {
+                    keyPair = generateKeyPair(keySize, random);
+                    writePrivateKey(keyPath, keyPair.getPrivate());
+                }
+                issue(name, keyPair);
+            } catch (IOException | GeneralSecurityException e) {
+                System.out.println("Unable to issue certificate for `%s`. Reason: %s".formatted(name, e.getMessage()));
+                // Key without certificate would send every next attempt to easyrsa, which could not sign it
+                deleteQuietly(keyPath);
+            }
+        }
+
+        private void issue(String name, KeyPair keyPair) throws IOException, GeneralSecurityException {
+            var serialBytes = new byte[16];
+            random.nextBytes(serialBytes);
+            serialBytes[0] &= 0x7F;
+            serialBytes[0] |= 0x01;
+            var serial = new BigInteger(serialBytes);
+            var notBefore = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+            var notAfter = notBefore.plus(certExpire);
+            var publicKeyInfo = keyPair.getPublic().getEncoded();
+
+            var extensions = new ArrayList<byte[]>();
+            extensions.add(extension(OID_BASIC_CONSTRAINTS, false, Der.sequence()));
+            extensions.add(extension(OID_SUBJECT_KEY_ID, false, Der.octetString(keyId(publicKeyInfo))));
+            if (caKeyId != null) {
+                extensions.add(extension(OID_AUTHORITY_KEY_ID, false, Der.sequence(Der.tagged(0x80, caKeyId))));
+            }
+            extensions.add(extension(OID_EXT_KEY_USAGE, false, Der.sequence(Der.oid(OID_CLIENT_AUTH))));
+            // digitalSignature
+            extensions.add(extension(OID_KEY_USAGE, false, Der.bitString(new byte[]{(byte) 0x80}, 7)));
+
+            var tbs = Der.sequence(
+                    Der.tagged(0xA0, Der.integer(BigInteger.TWO)),
+                    Der.integer(serial),
+                    signatureAlgorithmId,
+                    caSubject,
+                    Der.sequence(Der.time(notBefore), Der.time(notAfter)),
+                    Der.sequence(Der.set(Der.sequence(Der.oid(OID_COMMON_NAME), Der.utf8String(name)))),
+                    publicKeyInfo,
+                    Der.tagged(0xA3, Der.sequence(extensions.toArray(new byte[0][]))));
+            var signature = Signature.getInstance(signatureAlgorithm);
+            signature.initSign(caKey);
+            signature.update(tbs);
+            var certificate = Der.sequence(tbs, signatureAlgorithmId, Der.bitString(signature.sign(), 0));
+
+            var serialHex = serial.toString(16).toUpperCase();
+            if (serialHex.length() % 2 != 0) {
+                serialHex = "0" + serialHex;
+            }
+            var certPem = pem("CERTIFICATE", certificate);
+            var serialPath = pkiDir.resolve("certs_by_serial").resolve(serialHex + ".pem");
+            var certPath = pkiDir.resolve("issued").resolve(name + ".crt");
+            pkiLock.lock();
+            try {
+                Files.createDirectories(serialPath.getParent());
+                Files.writeString(serialPath, certPem, UTF_8, StandardOpenOption.CREATE_NEW);
+                try {
+                    Files.writeString(certPath, certPem, UTF_8, StandardOpenOption.CREATE_NEW);
+                    try {
+                        // Index entry is written last, so failed issuing leaves nothing easyrsa would see
+                        Files.writeString(pkiDir.resolve("index.txt"), "V\t%s\t\t%s\tunknown\t/CN=%s\n".formatted(INDEX_DATE.format(notAfter), serialHex, name),
+                                UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                    } catch (IOException e) {
+                        deleteQuietly(certPath);
+                        throw e;
+                    }
+                } catch (IOException e) {
+                    deleteQuietly(serialPath);
+                    throw e;
+                }
+            } finally {
+                pkiLock.unlock();
+            }
+        }
+
+        static void deleteQuietly(Path path) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        static KeyPair generateKeyPair(int keySize, SecureRandom random) throws GeneralSecurityException {
+            var generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(keySize, random);
+            return generator.generateKeyPair();
+        }
+
+        /**
+         * Writes key readable by owner only. File is created with these permissions, so key is never exposed. Fails if file exists
+         */
+        static void writePrivateKey(Path path, PrivateKey key) throws IOException {
+            Files.createFile(path, ownerOnly(path, "rw-------"));
+            Files.writeString(path, pem("PRIVATE KEY", key.getEncoded()), UTF_8, StandardOpenOption.WRITE);
+        }
+
+        /**
+         * Attribute to create file with given permissions. Empty on non-POSIX file system
+         */
+        static FileAttribute<?>[] ownerOnly(Path path, String permissions) {
+            return path.getFileSystem().supportedFileAttributeViews().contains("posix")
+                    ? new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(permissions))}
+                    : new FileAttribute<?>[0];
+        }
+
+        private static byte[] extension(String oid, boolean critical, byte[] value) {
+            return critical
+                    ? Der.sequence(Der.oid(oid), Der.TRUE, Der.octetString(value))
+                    : Der.sequence(Der.oid(oid), Der.octetString(value));
+        }
+
+        /**
+         * SHA-1 of subjectPublicKey bit string (RFC 5280 method 1)
+         */
+        private static byte[] keyId(byte[] publicKeyInfo) throws GeneralSecurityException {
+            var content = Der.content(publicKeyInfo);
+            // Skip AlgorithmIdentifier, then skip unused bits byte of BIT STRING
+            var bitString = Der.content(Arrays.copyOfRange(content, Der.length(content), content.length));
+            return MessageDigest.getInstance("SHA-1").digest(Arrays.copyOfRange(bitString, 1, bitString.length));
+        }
+
+        private static String pem(String type, byte[] der) {
+            return "-----BEGIN %s-----\n%s\n-----END %s-----\n".formatted(type, Base64.getMimeEncoder(64, "\n".getBytes(UTF_8)).encodeToString(der), type);
+        }
+    }
+
+    /**
+     * Pool of pre-generated client keys. Keys are stored as owner-only files in pki/private/.vpnman-key-pool, so the pool survives restarts.
+     * Background thread refills the pool up to high watermark when it drops below low watermark
+     */
+    private static class KeyPool {
+        private final Path dir;
+        private final int low;
+        private final int high;
+        private final int keySize;
+        private final BlockingQueue<Path> keys = new LinkedBlockingQueue<>();
+        private final AtomicBoolean isRefilling = new AtomicBoolean();
+        private final SecureRandom random = new SecureRandom();
+        private final ExecutorService filler = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "key-pool-filler");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+        KeyPool(Path dir, int low, int high, int keySize) throws IOException {
+            this.dir = dir;
+            this.low = low;
+            this.high = high;
+            this.keySize = keySize;
+            Files.createDirectories(dir, NativeIssuer.ownerOnly(dir, "rwx------"));
+            try {
+                // Dir could be created by older version with default permissions
+                Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwx------"));
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system
+            }
+            try (var list = Files.list(dir)) {
+                list.forEach(path -> {
+                    if (path.getFileName().toString().endsWith(".key")) {
+                        keys.add(path);
+                    } else {
+                        // Leftover of interrupted generation
+                        NativeIssuer.deleteQuietly(path);
+                    }
+                });
+            }
+            System.out.println("Key pool: %d keys loaded from %s".formatted(keys.size(), dir));
+            refill();
+        }
+
+        /**
+         * Moves pooled key to target path and returns it. Empty if pool is exhausted
+         */
+        Optional<KeyPair> take(Path target) {
+            try {
+                Path path;
+                while ((path = keys.poll()) != null) {
+                    try {
+                        Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (NoSuchFileException e) {
+                        continue;
+                    }
+                    var privateKey = (RSAPrivateCrtKey) NativeIssuer.readPrivateKey(Files.readString(target, UTF_8));
+                    if (privateKey.getModulus().bitLength() != keySize) {
+                        // Generated before EASYRSA_KEY_SIZE was changed
+                        Files.delete(target);
+                        continue;
+                    }
+                    var publicKey = KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(privateKey.getModulus(), privateKey.getPublicExponent()));
+                    return Optional.of(new KeyPair(publicKey, privateKey));
+                }
+                return Optional.empty();
+            } catch (IOException | GeneralSecurityException | ClassCastException e) {
+                System.out.println("Unable to take key from pool. Reason: " + e.getMessage());
+                // Unreadable key must not block writing of a generated one
+                NativeIssuer.deleteQuietly(target);
+                return Optional.empty();
+            } finally {
+                if (keys.size() < low) {
+                    refill();
+                }
+            }
+        }
+
+        private void refill() {
+            if (keys.size() >= high || !isRefilling.compareAndSet(false, true)) {
+                return;
+            }
+            filler.execute(() -> {
+                try {
+                    while (keys.size() < high) {
+                        var name = UUID.randomUUID().toString();
+                        var tmp = dir.resolve(name + ".tmp");
+                        NativeIssuer.writePrivateKey(tmp, NativeIssuer.generateKeyPair(keySize, random).getPrivate());
+                        var path = Files.move(tmp, dir.resolve(name + ".key"), StandardCopyOption.ATOMIC_MOVE);
+                        keys.add(path);
+                    }
+                } catch (IOException | GeneralSecurityException e) {
+                    System.out.println("Unable to fill key pool. Reason: " + e.getMessage());
+                } finally {
+                    isRefilling.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Template parsed once into literal chunks and ${VAR} slots. Literals are kept UTF-8 encoded, so rendering is a single pass
+     * into exactly sized array. Slots without value are rendered as is, so template could be filled in several steps
+     */
+    private static class Template {
+        private final byte[][] literals;
+        private final String[] slots;
+        private final int literalsSize;
+
+        private Template(List<byte[]> literals, List<String> slots) {
+            this.literals = literals.toArray(new byte[0][]);
+            this.slots = slots.toArray(new String[0]);
+            this.literalsSize = literals.stream().mapToInt(literal -> literal.length).sum();
+        }
+
+        static Template compile(String source) {
+            var literals = new ArrayList<byte[]>();
+            var slots = new ArrayList<String>();
+            var literal = new StringBuilder();
+            int from = 0;
+            while (from < source.length()) {
+                int start = source.indexOf("${", from);
+                int end = start < 0 ? -1 : source.indexOf('}', start + 2);
+                if (end < 0) {
+                    break;
+                }
+                var slot = source.substring(start + 2, end);
+                if (slot.isEmpty() || !slot.chars().allMatch(c -> Character.isLetterOrDigit(c) || c == '_')) {
+                    // Not a placeholder, e.g. shell syntax in comments
+                    literal.append(source, from, start + 2);
+                    from = start + 2;
+                    continue;
+                }
+                literal.append(source, from, start);
+                literals.add(literal.toString().getBytes(UTF_8));
+                literal.setLength(0);
+                slots.add(slot);
+                from = end + 1;
+            }
+            literal.append(source, from, source.length());
+            literals.add(literal.toString().getBytes(UTF_8));
+            return new Template(literals, slots);
+        }
+
+        boolean hasSlot(String name) {
+            return Arrays.asList(slots).contains(name);
+        }
+
+        byte[] render(Map<String, String> values) {
+            var encoded = new byte[slots.length][];
+            int size = literalsSize;
+            for (int i = 0; i < slots.length; i++) {
+                var value = values.get(slots[i]);
+                encoded[i] = (value != null ? value : "${" + slots[i] + "}").getBytes(UTF_8);
+                size += encoded[i].length;
+            }
+            var result = new byte[size];
+            int position = 0;
+            for (int i = 0; i < slots.length; i++) {
+                System.arraycopy(literals[i], 0, result, position, literals[i].length);
+                position += literals[i].length;
+                System.arraycopy(encoded[i], 0, result, position, encoded[i].length);
+                position += encoded[i].length;
+            }
+            System.arraycopy(literals[slots.length], 0, result, position, literals[slots.length].length);
+            return result;
+        }
+
+        String renderString(Map<String, String> values) {
+            return new String(render(values), UTF_8);
+        }
+    }
+
+    /**
+     * Minimal DER encoder for certificates issuing
+     */
+    private static class Der {
+        static final byte[] NULL = {0x05, 0x00};
+        static final byte[] TRUE = {0x01, 0x01, (byte) 0xFF};
+
+        static byte[] tagged(int tag, byte[]... parts) {
+            var content = new ByteArrayOutputStream();
+            for (byte[] part : parts) {
+                content.writeBytes(part);
+            }
+            var length = content.size();
+            var result = new ByteArrayOutputStream(length + 6);
+            result.write(tag);
+            if (length < 0x80) {
+                result.write(length);
+            } else {
+                var lengthBytes = BigInteger.valueOf(length).toByteArray();
+                int offset = lengthBytes[0] == 0 ? 1 : 0;
+                result.write(0x80 | (lengthBytes.length - offset));
+                result.write(lengthBytes, offset, lengthBytes.length - offset);
+            }
+            result.writeBytes(content.toByteArray());
+            return result.toByteArray();
+        }
+
+        static byte[] sequence(byte[]... parts) {
+            return tagged(0x30, parts);
+        }
+
+        static byte[] set(byte[]... parts) {
+            return tagged(0x31, parts);
+        }
+
+        static byte[] integer(BigInteger value) {
+            return tagged(0x02, value.toByteArray());
+        }
+
+        static byte[] octetString(byte[] value) {
+            return tagged(0x04, value);
+        }
+
+        static byte[] bitString(byte[] value, int unusedBits) {
+            return tagged(0x03, new byte[]{(byte) unusedBits}, value);
+        }
+
+        static byte[] utf8String(String value) {
+            return tagged(0x0C, value.getBytes(UTF_8));
+        }
+
+        static byte[] time(Instant instant) {
+            var year = instant.atZone(ZoneOffset.UTC).getYear();
+            // RFC 5280: UTCTime until 2049, GeneralizedTime after
+            return year < 2050
+                    ? tagged(0x17, NativeIssuer.INDEX_DATE.format(instant).getBytes(US_ASCII))
+                    : tagged(0x18, NativeIssuer.GENERALIZED_DATE.format(instant).getBytes(US_ASCII));
+        }
+
+        static byte[] oid(String oid) {
+            var arcs = Arrays.stream(oid.split("\\.")).mapToLong(Long::parseLong).toArray();
+            var content = new ByteArrayOutputStream();
+            content.write((int) (arcs[0] * 40 + arcs[1]));
+            for (int i = 2; i < arcs.length; i++) {
+                var arc = arcs[i];
+                var stack = new ArrayDeque<Integer>();
+                stack.push((int) (arc & 0x7F));
+                while ((arc >>= 7) > 0) {
+                    stack.push((int) (arc & 0x7F) | 0x80);
+                }
+                stack.forEach(content::write);
+            }
+            return tagged(0x06, content.toByteArray());
+        }
+
+        /**
+         * Returns total length (header and content) of the first element
+         */
+        static int length(byte[] der) {
+            int first = der[1] & 0xFF;
+            if (first < 0x80) {
+                return 2 + first;
+            }
+            int count = first & 0x7F;
+            int length = 0;
+            for (int i = 0; i < count; i++) {
+                length = (length << 8) | (der[2 + i] & 0xFF);
+            }
+            return 2 + count + length;
+        }
+
+        /**
+         * Returns content of the first element
+         */
+        static byte[] content(byte[] der) {
+            int first = der[1] & 0xFF;
+            int header = first < 0x80 ? 2 : 2 + (first & 0x7F);
+            return Arrays.copyOfRange(der, header, length(der));
+        }
+    }
+
+    private static class JsonUtil {
+        private record Accessor(String name, MethodHandle getter) {
+        }
+
+        // Getters are resolved once per class, so serialization does not use reflection
+        private static final ClassValue<Accessor[]> ACCESSORS = new ClassValue<>() {
+            @Override
+            protected Accessor[] computeValue(Class<?> type) {
+                var lookup = MethodHandles.lookup();
+                try {
+                    if (type.isRecord()) {
+                        var components = type.getRecordComponents();
+                        var accessors = new Accessor[components.length];
+                        for (int i = 0; i < components.length; i++) {
+                            var method = components[i].getAccessor();
+                            method.setAccessible(true);
+                            accessors[i] = new Accessor(components[i].getName(), lookup.unreflect(method));
+                        }
+                        return accessors;
+                    }
+                    var accessors = new ArrayList<Accessor>();
+                    for (Field field : type.getDeclaredFields()) {
+                        if (Modifier.isStatic(field.getModifiers())) {
+                            continue;
+                        }
+                        field.setAccessible(true);
+                        accessors.add(new Accessor(field.getName(), lookup.unreflectGetter(field)));
+                    }
+                    return accessors.toArray(new Accessor[0]);
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        public static String toJson(Object object) {
+            var writer = new StringWriter();
+            try {
+                toJson(object, writer);
             } catch (IOException e) {
-                System.out.println(e.getMessage());
+                throw new UncheckedIOException(e);
             }
+            return writer.toString();
         }
-        return false;
-    }
 
-    private static void createDirAndSetProperty(String property, Path path, Properties props) {
-        try {
-            Files.createDirectories(path);
-            props.put(property, path.toAbsolutePath().toString());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        /**
+         * Writes object as UTF-8 JSON to the stream. Stream is flushed, but not closed
+         */
+        public static void toJson(Object object, OutputStream outputStream) throws IOException {
+            var writer = new BufferedWriter(new OutputStreamWriter(outputStream, UTF_8));
+            toJson(object, writer);
+            writer.flush();
         }
-    }
 
-    private static Properties parseArguments(String[] args) {
-        Properties argMap = new Properties();
-        for (String arg : args) {
-            String[] splitArg = arg.split("=");
-            if (splitArg.length > 1) {
-                if (splitArg[0].length() > 2) {
-                    String key = splitArg[0].substring(2);
-                    argMap.put(key, splitArg[1]);
+        public static void toJson(Object object, Writer writer) throws IOException {
+            if (object == null) {
+                writer.write("null");
+            } else if (object instanceof Number || object instanceof Boolean) {
+                writer.write(object.toString());
+            } else if (object instanceof CharSequence || object instanceof Character || object instanceof Enum<?>) {
+                writeString(object.toString(), writer);
+            } else if (object instanceof Map<?, ?> map) {
+                writer.write('{');
+                var first = true;
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    if (!first) {
+                        writer.write(", ");
+                    }
+                    first = false;
+                    writeString(String.valueOf(entry.getKey()), writer);
+                    writer.write(": ");
+                    toJson(entry.getValue(), writer);
                 }
-            } else if (splitArg[0].equals("--%s".formatted(PARAM_HELP))) {
-                argMap.put(PARAM_HELP, "");
+                writer.write('}');
+            } else if (object instanceof Iterable<?> iterable) {
+                writer.write('[');
+                var first = true;
+                for (Object element : iterable) {
+                    if (!first) {
+                        writer.write(", ");
+                    }
+                    first = false;
+                    toJson(element, writer);
+                }
+                writer.write(']');
+            } else if (object.getClass().isArray()) {
+                writer.write('[');
+                int length = Array.getLength(object);
+                for (int i = 0; i < length; i++) {
+                    if (i > 0) {
+                        writer.write(", ");
+                    }
+                    toJson(Array.get(object, i), writer);
+                }
+                writer.write(']');
             } else {
-                var key = splitArg[0].substring(2);
-                switch (key) {
-                    case PARAM_HELP -> argMap.put(PARAM_HELP, "");
-                    case PARAM_API -> argMap.put(PARAM_API, "");
-                    case PARAM_DEFAULT_TEMPLATE -> argMap.put(PARAM_DEFAULT_TEMPLATE, "");
-                    case PARAM_IS_DEV -> argMap.put(PARAM_IS_DEV, "");
+                writer.write('{');
+                var accessors = ACCESSORS.get(object.getClass());
+                for (int i = 0; i < accessors.length; i++) {
+                    if (i > 0) {
+                        writer.write(", ");
+                    }
+                    writeString(accessors[i].name(), writer);
+                    writer.write(": ");
+                    Object value;
+                    try {
+                        value = accessors[i].getter().invoke(object);
+                    } catch (Throwable e) {
+                        throw new RuntimeException(e);
+                    }
+                    toJson(value, writer);
                 }
+                writer.write('}');
             }
         }
-        return argMap;
-    }
 
-    private static class JsonUtil {
-        public static String toJson(Object object) throws IllegalAccessException {
-            if (object == null) {
-                return "null";
-            } else if (object.getClass().isArray()) {
-                return arrayToJson(object);
-            } else if (object instanceof Number || object instanceof Boolean) {
-                return object.toString();
-            } else if (object instanceof String) {
-                return "\"" + object + "\"";
-            } else {
-                return objectToJson(object);
+        private static void writeString(String value, Writer writer) throws IOException {
+            writer.write('"');
+            int start = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char ch = value.charAt(i);
+                String escaped = switch (ch) {
+                    case '"' -> "\\\"";
+                    case '\\' -> "\\\\";
+                    case '\n' -> "\\n";
+                    case '\r' -> "\\r";
+                    case '\t' -> "\\t";
+                    case '\b' -> "\\b";
+                    case '\f' -> "\\f";
+                    default -> ch < 0x20 ? "\\u%04x".formatted((int) ch) : null;
+                };
+                if (escaped != null) {
+                    writer.write(value, start, i - start);
+                    writer.write(escaped);
+                    start = i + 1;
+                }
             }
+            writer.write(value, start, value.length() - start);
+            writer.write('"');
         }
 
-        private static String arrayToJson(Object array) throws IllegalAccessException {
-            int length = Array.getLength(array);
-            StringJoiner arrayElements = new StringJoiner(", ", "[", "]");
-            for (int i = 0; i < length; i++) {
-                Object element = Array.get(array, i);
-                arrayElements.add(toJson(element));
+        private static class BodyTooLargeException extends IOException {
+            private static final long serialVersionUID = 1L;
+
+            BodyTooLargeException(long maxSize) {
+                super("Request body exceeds %d bytes".formatted(maxSize));
             }
-            return arrayElements.toString();
         }
 
-        private static String objectToJson(Object object) throws IllegalAccessException {
-            StringJoiner jsonElements = new StringJoiner(", ", "{", "}");
-            Field[] fields = object.getClass().getDeclaredFields();
-            for (Field field : fields) {
-                field.setAccessible(true);
-                String name = field.getName();
-                Object value = field.get(object);
-                jsonElements.add("\"" + name + "\": " + toJson(value));
+        private static class LimitedInputStream extends FilterInputStream {
+            private final long maxSize;
+            private long count;
+
+            LimitedInputStream(InputStream in, long maxSize) {
+                super(in);
+                this.maxSize = maxSize;
+            }
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1 && ++count > maxSize) {
+                    throw new BodyTooLargeException(maxSize);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0 && (count += n) > maxSize) {
+                    throw new BodyTooLargeException(maxSize);
+                }
+                return n;
             }
-            return jsonElements.toString();
         }
 
-        private static int read(Reader reader) {
-            try {
-                int ch = reader.read();
-                while (ch == '\n' || ch == '\r' || ch == '\t' || ch == '\b') {
-                    ch = reader.read();
+        /**
+         * Single-pass recursive descent parser. Reads characters to a fixed buffer and collects strings to the one reusable builder
+         */
+        private static class JsonParser {
+            private static final int MAX_DEPTH = 256;
+            private final Reader reader;
+            private final char[] buffer = new char[4096];
+            private final StringBuilder token = new StringBuilder();
+            private int position;
+            private int length;
+            private int depth;
+
+            JsonParser(Reader reader) {
+                this.reader = reader;
+            }
+
+            Object parseDocument() throws IOException {
+                var value = parseValue();
+                if (skipWhitespace() != -1) {
+                    throw error("Unexpected data after JSON value");
                 }
-                return ch;
-            } catch (IOException e) {
-                throw new RuntimeException(e.getMessage());
-            }
-        }
-
-        public static Map<String, Object> fromJSON(String json) {
-            var result = new HashMap<String, Object>();
-            StringReader reader = new StringReader(json.substring(1, json.length() - 1));
-            int ch = read(reader);
-            String key = null;
-            String objKey = null;
-            String arrKey = null;
-            Map<String, Object> inner = null;
-            List<Object> array = null;
-            boolean isArray = false;
-            while (ch != -1) {
-                switch ((char) ch) {
-                    case '{' -> {
-                        if (inner != null) {
-                            throw new RuntimeException("Maximum depth is 1");
-                        }
-                        objKey = key;
-                        inner = new HashMap<>();
-                        key = null;
-                    }
-                    case '}' -> {
-                        if (inner != null) {
-                            result.put(objKey, inner);
-                            inner = null;
-                            objKey = null;
-                        }
-                    }
-                    case '[' -> {
-                        if (isArray) {
-                            throw new RuntimeException("Maximum depth is 1");
-                        }
-                        arrKey = key;
-                        isArray = true;
-                        array = new ArrayList<>();
-                        key = null;
+                return value;
+            }
+
+            private int peek() throws IOException {
+                if (position == length) {
+                    length = reader.read(buffer, 0, buffer.length);
+                    position = 0;
+                    if (length <= 0) {
+                        length = 0;
+                        return -1;
                     }
-                    case ']' -> {
-                        if (!isArray) {
-                            throw new RuntimeException("Array is not started");
-                        }
-                        isArray = false;
-                        if (inner != null) {
-                            inner.put(arrKey, array);
-                        } else {
-                            result.put(arrKey, array);
-                        }
-                        arrKey = null;
-                        array = null;
+                }
+                return buffer[position];
+            }
+
+            private int next() throws IOException {
+                int ch = peek();
+                if (ch != -1) {
+                    position++;
+                }
+                return ch;
+            }
+
+            private int skipWhitespace() throws IOException {
+                int ch = peek();
+                while (ch == ' ' || ch == '\n' || ch == '\r' || ch == '\t') {
+                    position++;
+                    ch = peek();
+                }
+                return ch;
+            }
+
+            private void expect(char expected) throws IOException {
+                if (skipWhitespace() != expected) {
+                    throw error("Expected '%s'".formatted(expected));
+                }
+                position++;
+            }
+
+            private RuntimeException error(String message) {
+                return new RuntimeException("Invalid JSON: " + message);
+            }
+
+            private Object parseValue() throws IOException {
+                int ch = skipWhitespace();
+                return switch (ch) {
+                    case '{' -> parseObject();
+                    case '[' -> parseArray();
+                    case '"' -> parseString();
+                    case 't' -> parseLiteral("true", Boolean.TRUE);
+                    case 'f' -> parseLiteral("false", Boolean.FALSE);
+                    case 'n' -> parseLiteral("null", null);
+                    case '-', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' -> parseNumber();
+                    case -1 -> throw error("Unexpected end of input");
+                    default -> throw error("Unrecognizable value start: " + (char) ch);
+                };
+            }
+
+            private Map<String, Object> parseObject() throws IOException {
+                enter();
+                position++;
+                var result = new HashMap<String, Object>();
+                if (skipWhitespace() == '}') {
+                    position++;
+                    depth--;
+                    return result;
+                }
+                while (true) {
+                    if (skipWhitespace() != '"') {
+                        throw error("Expected object key");
                     }
-                    case '"' -> {
-                        var sb = new StringBuilder();
-                        ch = read(reader);
-                        while (ch != -1 && (char) ch != '"') {
-                            sb.append((char) ch);
-                            ch = read(reader);
-                        }
-                        if (key == null && !isArray) {
-                            key = sb.toString();
-                        } else if (isArray) {
-                            array.add(sb.toString());
-                        } else if (inner != null) {
-                            inner.put(key, sb.toString());
-                            key = null;
-                        } else {
-                            result.put(key, sb.toString());
-                            key = null;
-                        }
+                    var key = parseString();
+                    expect(':');
+                    result.put(key, parseValue());
+                    int ch = skipWhitespace();
+                    position++;
+                    if (ch == '}') {
+                        break;
+                    } else if (ch != ',') {
+                        throw error("Expected ',' or '}'");
                     }
-                    case 't' -> {
-                        StringBuilder sb = new StringBuilder();
-                        sb.append((char) ch);
-                        sb.append((char) read(reader));
-                        sb.append((char) read(reader));
-                        sb.append((char) read(reader));
-                        if (isArray) {
-                            array.add(Boolean.valueOf(sb.toString()));
-                        } else if (inner != null) {
-                            inner.put(key, Boolean.valueOf(sb.toString()));
-                            key = null;
-                        } else {
-                            result.put(key, Boolean.valueOf(sb.toString()));
-                            key = null;
-                        }
+                }
+                depth--;
+                return result;
+            }
+
+            private List<Object> parseArray() throws IOException {
+                enter();
+                position++;
+                var result = new ArrayList<>();
+                if (skipWhitespace() == ']') {
+                    position++;
+                    depth--;
+                    return result;
+                }
+                while (true) {
+                    result.add(parseValue());
+                    int ch = skipWhitespace();
+                    position++;
+                    if (ch == ']') {
+                        break;
+                    } else if (ch != ',') {
+                        throw error("Expected ',' or ']'");
                     }
-                    case 'f' -> {
-                        var sb = new StringBuilder();
-                        sb.append((char) ch);
-                        sb.append((char) read(reader));
-                        sb.append((char) read(reader));
-                        sb.append((char) read(reader));
-                        sb.append((char) read(reader));
-                        if (isArray) {
-                            array.add(Boolean.valueOf(sb.toString()));
-                        } else if (inner != null) {
-                            inner.put(key, Boolean.valueOf(sb.toString()));
-                            key = null;
-                        } else {
-                            result.put(key, Boolean.valueOf(sb.toString()));
-                            key = null;
+                }
+                depth--;
+                return result;
+            }
+
+            private void enter() {
+                if (++depth > MAX_DEPTH) {
+                    throw error("Maximum depth is " + MAX_DEPTH);
+                }
+            }
+
+            private String parseString() throws IOException {
+                position++;
+                token.setLength(0);
+                while (true) {
+                    int ch = next();
+                    switch (ch) {
+                        case -1 -> throw error("Unterminated string");
+                        case '"' -> {
+                            return token.toString();
                         }
-                    }
-                    case 'n' -> {
-                        var sb = new StringBuilder();
-                        sb.append(ch);
-                        sb.append((char) read(reader));
-                        sb.append((char) read(reader));
-                        sb.append((char) read(reader));
-                        if (sb.toString().equals("null")) {
-                            if (isArray) {
-                                array.add(null);
-                            } else if (inner != null) {
-                                inner.put(key, null);
-                                key = null;
-                            } else {
-                                result.put(key, null);
-                                key = null;
+                        case '\\' -> {
+                            int escaped = next();
+                            switch (escaped) {
+                                case '"', '\\', '/' -> token.append((char) escaped);
+                                case 'b' -> token.append('\b');
+                                case 'f' -> token.append('\f');
+                                case 'n' -> token.append('\n');
+                                case 'r' -> token.append('\r');
+                                case 't' -> token.append('\t');
+                                case 'u' -> {
+                                    int code = 0;
+                                    for (int i = 0; i < 4; i++) {
+                                        int digit = Character.digit(next(), 16);
+                                        if (digit < 0) {
+                                            throw error("Invalid unicode escape");
+                                        }
+                                        code = code * 16 + digit;
+                                    }
+                                    token.append((char) code);
+                                }
+                                default -> throw error("Invalid escape");
                             }
-                        } else {
-                            throw new RuntimeException("Invalid value");
                         }
+                        default -> token.append((char) ch);
                     }
-                    case '-', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' -> {
-                        var sb = new StringBuilder();
-                        var flo = false;
-                        while (ch != -1 && (Character.isDigit((char) ch) || (char) ch == '.')) {
-                            sb.append((char) ch);
-                            if ((char) ch == '.') {
-                                flo = true;
-                            }
-                            ch = read(reader);
-                        }
-                        Object value = flo ? Double.parseDouble(sb.toString()) : Integer.parseInt(sb.toString());
-                        if (isArray) {
-                            array.add(value);
-                        } else if (inner == null) {
-                            result.put(key, value);
-                            key = null;
-                        } else {
-                            inner.put(key, value);
-                            key = null;
-                        }
+                }
+            }
+
+            private Object parseLiteral(String literal, Object value) throws IOException {
+                for (int i = 0; i < literal.length(); i++) {
+                    if (next() != literal.charAt(i)) {
+                        throw error("Invalid value");
                     }
-                    case ' ', ',', ':' -> {
+                }
+                return value;
+            }
+
+            private Number parseNumber() throws IOException {
+                token.setLength(0);
+                var isFloat = false;
+                int ch = peek();
+                while (ch != -1 && (Character.isDigit(ch) || ch == '-' || ch == '+' || ch == '.' || ch == 'e' || ch == 'E')) {
+                    isFloat |= ch == '.' || ch == 'e' || ch == 'E';
+                    token.append((char) ch);
+                    position++;
+                    ch = peek();
+                }
+                try {
+                    if (isFloat) {
+                        return Double.parseDouble(token.toString());
                     }
-                    default -> throw new RuntimeException("Unrecognizable value start: " + json.charAt(1));
+                    long value = Long.parseLong(token.toString());
+                    return value == (int) value ? (Number) (int) value : (Number) value;
+                } catch (NumberFormatException e) {
+                    throw error("Invalid number " + token);
                 }
-                ch = read(reader);
             }
+        }
 
-            return result;
+        /**
+         * Parses any JSON value: object to Map, array to List, number to Integer, Long or Double
+         */
+        public static Object parse(Reader reader) throws IOException {
+            return new JsonParser(reader).parseDocument();
         }
 
-        public static Map<String, Object> fromJSON(InputStream source) {
-            String result = new BufferedReader(new InputStreamReader(source))
-                    .lines().collect(Collectors.joining("\n"));
-            return fromJSON(result);
+        /**
+         * Parses JSON object from the stream. BodyTooLargeException is thrown as soon as more than maxSize bytes are read
+         */
+        @SuppressWarnings("unchecked")
+        public static Map<String, Object> fromJSON(InputStream source, long maxSize) throws IOException {
+            var reader = new InputStreamReader(new LimitedInputStream(source, maxSize), UTF_8);
+            if (parse(reader) instanceof Map<?, ?> map) {
+                return (Map<String, Object>) map;
+            }
+            throw new RuntimeException("Invalid JSON: object expected");
         }
     }
 
@@ -922,9 +3291,23 @@ public class VPNMan {
     private static final String PARAM_PORT = "port";
     private static final String PARAM_CONTEXT = "context";
     private static final String PARAM_STATIC = "static";
+    private static final String PARAM_MAX_BODY = "max-body";
+    private static final String PARAM_WORKERS = "workers";
+    private static final String PARAM_ISSUER = "issuer";
+    private static final String PARAM_KEY_POOL = "key-pool";
+    private static final String PARAM_KEY_POOL_LOW = "key-pool-low";
+    private static final String PARAM_GZIP_PROFILES = "gzip-profiles";
+    private static final String PARAM_LAYOUT = "layout";
+    private static final String PARAM_HTTP_EXECUTOR = "http-executor";
+    private static final String PARAM_HTTP_THREADS = "http-threads";
+    private static final String PARAM_HTTP_QUEUE = "http-queue";
+    private static final String PARAM_BACKLOG = "backlog";
     private static final String PATH_CLIENT_PROFILES = "client_profiles";
     private static final Integer DEFAULT_PORT = 8666;
     private static final String DEFAULT_IP = "127.0.0.1";
+    private static final Long DEFAULT_MAX_BODY = 1024L * 1024;
+    private static final Integer DEFAULT_HTTP_THREADS = 64;
+    private static final Integer DEFAULT_HTTP_QUEUE = 256;
     private static final String DEFAULT_STATIC = "webapp";
 
 
@@ -953,6 +3336,12 @@ public class VPNMan {
             | --%s=<vpnserver_port>  |   true   | VPN server port. Required if `--template` is not specified              |
             | --%s=<ca.crt path>          |   true   | VPN server ca.crt file. Required if `--template` is not specified       |
             | --%s=<.tlsauth path>   |   true   | VPN server tlsauth file. Required if `--template` is not specified      |
+            | --%s=<threads>         |   true   | Number of parallel easyrsa workers for bulk operations. CPU count is default |
+            | --%s=<easyrsa|native>   |   true   | How to issue certificates: run easyrsa (default) or sign in-process with pki/ca.crt and unencrypted pki/private/ca.key |
+            | --%s=<size>           |   true   | Number of pre-generated client keys for native issuer. 0 (disabled) is default |
+            | --%s=<size>       |   true   | Pool is refilled when it has less keys. Half of pool size is default    |
+            | --%s=<true|false> |   true   | Keep gzip variant of profiles for clients accepting it. true is default |
+            | --%s=<flat|sharded>      |   true   | Store profiles in output dir or in its subdirs by hash prefix. %s is default |
             --------------------------------------------------------------------------------------------------------------------
             Server parameters:
             |         Parameter           | Optional |                            Description                                  |
@@ -961,11 +3350,18 @@ public class VPNMan {
             | --%s                      |   true   | Port for service API. %d is default                                   |
             | --%s                   |   true   | Secret context for managing profiles API. Random UUID if not specified  |
             | --%s                    |   true   | Path to dir with static content with UI. %s is default              |
+            | --%s                  |   true   | Maximum size of request body in bytes. %d is default              |
+            | --%s=<cached|bounded|virtual> | true | Executor for HTTP requests. %s is default                    |
+            | --%s=<threads>    |   true   | Requests processed at once in bounded mode. %d is default               |
+            | --%s=<size>         |   true   | Requests waiting in bounded mode, others get 503. %d is default         |
+            | --%s=<size>            |   true   | Pending connections backlog. 0 (system default) is default              |
             --------------------------------------------------------------------------------------------------------------------
                 
             For more information please visit https://github.com/tar/vpnman. Thank you for using.
             """.formatted(PARAM_HELP, PARAM_API, PARAM_DEFAULT_TEMPLATE, PARAM_CONFIG, PARAM_IS_DEV, PARAM_EASYRSA, PARAM_OUTPUT, PATH_CLIENT_PROFILES, PARAM_TEMPLATE, PARAM_VPNURL, PARAM_VPNPORT,
-            PARAM_CA, PARAM_TLSAUTH, PARAM_URL, DEFAULT_IP, PARAM_PORT, DEFAULT_PORT, PARAM_CONTEXT, PARAM_STATIC, DEFAULT_STATIC);
+            PARAM_CA, PARAM_TLSAUTH, PARAM_WORKERS, PARAM_ISSUER, PARAM_KEY_POOL, PARAM_KEY_POOL_LOW, PARAM_GZIP_PROFILES, PARAM_LAYOUT, OVPNManager.LAYOUT_FLAT, PARAM_URL, DEFAULT_IP, PARAM_PORT, DEFAULT_PORT, PARAM_CONTEXT, PARAM_STATIC, DEFAULT_STATIC,
+            PARAM_MAX_BODY, DEFAULT_MAX_BODY, PARAM_HTTP_EXECUTOR, OVPNServer.EXECUTOR_CACHED, PARAM_HTTP_THREADS, DEFAULT_HTTP_THREADS,
+            PARAM_HTTP_QUEUE, DEFAULT_HTTP_QUEUE, PARAM_BACKLOG);
 
     private static final String defaultTemplate =
             """
@@ -1036,15 +3432,53 @@ public class VPNMan {
                   summary: return all profiles
                   operationId: getProfiles
                   description: 'returns all active VPN profiles'
+                  parameters:
+                    - name: offset
+                      in: query
+                      required: false
+                      description: Number of profiles to skip. 0 is default
+                      schema:
+                        type: integer
+                    - name: limit
+                      in: query
+                      required: false
+                      description: Maximum number of profiles to return. All profiles if not specified
+                      schema:
+                        type: integer
+                    - name: prefix
+                      in: query
+                      required: false
+                      description: Return only profiles which name starts with prefix
+                      schema:
+                        type: string
+                    - name: If-None-Match
+                      in: header
+                      required: false
+                      description: ETag of previously loaded profiles list
+                      schema:
+                        type: string
                   responses:
                     '200':
                       description: All profiles loaded
+                      headers:
+                        ETag:
+                          description: Profiles list version
+                          schema:
+                            type: string
+                        X-Total-Count:
+                          description: Number of profiles matching prefix
+                          schema:
+                            type: integer
                       content:
                         application/json:
                           schema:
                             type: array
                             items:
                               $ref: '#/components/schemas/Profile'
+                    '304':
+                      description: Profiles list is not changed since ETag from If-None-Match
+                    '400':
+                      description: Invalid offset or limit
                 post:
                   summary: create new VPN profile
                   operationId: createProfile
@@ -1054,6 +3488,8 @@ public class VPNMan {
                       description: profile created
                     '400':
                       description: 'Name is not specified or invalid'
+                    '413':
+                      description: 'Request body is too large'
                   requestBody:
                     content:
                       application/json:
@@ -1063,10 +3499,87 @@ public class VPNMan {
                 put:
                   summary: update all profils
                   operationId: updateProfiles
-                  description: Removes all .ovpn files and recreates them from easyrsa log
+                  description: Regenerates missing or changed .ovpn files from easyrsa log and removes profiles of not valid certificates
                   responses:
-                    '200':
-                      description: "Successfull updated"
+                    '202':
+                      description: Update job accepted. Job result is UpdateResult
+                      headers:
+                        Location:
+                          description: Path to job status
+                          schema:
+                            type: string
+                      content:
+                        application/json:
+                          schema:
+                            $ref: '#/components/schemas/Job'
+              /${secret}/profiles/bulk:
+                parameters:
+                  - name: secret
+                    in: path
+                    required: true
+                    description: Secret part of path to secure access
+                    schema:
+                      type: string
+                post:
+                  summary: create several VPN profiles
+                  operationId: createProfiles
+                  description: Creates VPN profiles in parallel. Response contains result for each name
+                  responses:
+                    '202':
+                      description: Job accepted. Job result is array of ProfileResult
+                      headers:
+                        Location:
+                          description: Path to job status
+                          schema:
+                            type: string
+                      content:
+                        application/json:
+                          schema:
+                            $ref: '#/components/schemas/Job'
+                    '400':
+                      description: 'Names are not specified or invalid'
+                    '413':
+                      description: 'Request body is too large'
+                  requestBody:
+                    content:
+                      application/json:
+                        schema:
+                          $ref: '#/components/schemas/ProfileNames'
+                    description: Names for new profiles
+              /${secret}/profiles/revoke:
+                parameters:
+                  - name: secret
+                    in: path
+                    required: true
+                    description: Secret part of path to secure access
+                    schema:
+                      type: string
+                post:
+                  summary: revoke several VPN profiles
+                  operationId: revokeProfiles
+                  description: Revokes certificates with easyrsa, regenerates CRL once and deletes .ovpn files of revoked certificates
+                  responses:
+                    '202':
+                      description: Job accepted. Job result is array of RevokeResult
+                      headers:
+                        Location:
+                          description: Path to job status
+                          schema:
+                            type: string
+                      content:
+                        application/json:
+                          schema:
+                            $ref: '#/components/schemas/Job'
+                    '400':
+                      description: 'Names are not specified or invalid'
+                    '413':
+                      description: 'Request body is too large'
+                  requestBody:
+                    content:
+                      application/json:
+                        schema:
+                          $ref: '#/components/schemas/ProfileNames'
+                    description: Names of profiles to revoke
               /${secret}/profiles/${name}:
                 parameters:
                   - name: secret
@@ -1084,12 +3597,111 @@ public class VPNMan {
                 delete:
                   summary: Revoke access and delete profile
                   operationId: deleteProfile
-                  description: Revokes access with easyrsa and deletes .ovpn file
+                  description: Revokes access with easyrsa, regenerates CRL and deletes .ovpn file
                   responses:
                     '200':
                       description: Profile successfully deleted
                     '404':
                       description: Profile not found
+                    '500':
+                      description: Certificate was not revoked
+              /${secret}/jobs:
+                parameters:
+                  - name: secret
+                    in: path
+                    required: true
+                    description: Secret part of path to secure access
+                    schema:
+                      type: string
+                get:
+                  summary: return all jobs
+                  operationId: getJobs
+                  description: Returns running jobs and jobs finished within last hour
+                  responses:
+                    '200':
+                      description: Jobs loaded
+                      content:
+                        application/json:
+                          schema:
+                            type: array
+                            items:
+                              $ref: '#/components/schemas/Job'
+              /${secret}/jobs/${id}:
+                parameters:
+                  - name: secret
+                    in: path
+                    required: true
+                    description: Secret part of path to secure access
+                    schema:
+                      type: string
+                  - name: id
+                    in: path
+                    required: true
+                    description: job id
+                    schema:
+                      type: string
+                get:
+                  summary: return job status
+                  operationId: getJob
+                  description: Returns job status, progress and errors
+                  responses:
+                    '200':
+                      description: Job found
+                      content:
+                        application/json:
+                          schema:
+                            $ref: '#/components/schemas/Job'
+                    '404':
+                      description: Job not found
+              /${secret}/export:
+                parameters:
+                  - name: secret
+                    in: path
+                    required: true
+                    description: Secret part of path to secure access
+                    schema:
+                      type: string
+                get:
+                  summary: export all profiles
+                  operationId: exportProfiles
+                  description: Streams ZIP archive with `${name}.ovpn` entry for each profile
+                  parameters:
+                    - name: prefix
+                      in: query
+                      required: false
+                      description: Export only profiles which name starts with prefix
+                      schema:
+                        type: string
+                  responses:
+                    '200':
+                      description: Archive is streamed
+                      content:
+                        application/zip:
+                          schema:
+                            type: string
+                            format: binary
+                post:
+                  summary: export selected profiles
+                  operationId: exportSelectedProfiles
+                  description: Streams ZIP archive with `${name}.ovpn` entry for each found profile. Unknown names are skipped
+                  responses:
+                    '200':
+                      description: Archive is streamed
+                      content:
+                        application/zip:
+                          schema:
+                            type: string
+                            format: binary
+                    '400':
+                      description: 'Names are not specified or invalid'
+                    '413':
+                      description: 'Request body is too large'
+                  requestBody:
+                    content:
+                      application/json:
+                        schema:
+                          $ref: '#/components/schemas/ProfileNames'
+                    description: Names of profiles to export
               /direct/${hash}:
                 parameters:
                   - name: hash
@@ -1146,6 +3758,73 @@ public class VPNMan {
                     hash:
                       type: string
                       example: 'a30b62ed1b73534c59f34367a87765a42b4cf3e2b6852f327600286567f18fc0'
+                ProfileResult:
+                  type: object
+                  properties:
+                    name:
+                      type: string
+                      example: john.smith
+                    profile:
+                      $ref: '#/components/schemas/Profile'
+                    error:
+                      type: string
+                      example: Unable to create profile
+                Job:
+                  type: object
+                  properties:
+                    id:
+                      type: string
+                    type:
+                      type: string
+                      enum: [create, revoke, update]
+                    status:
+                      type: string
+                      enum: [queued, running, done, failed]
+                    total:
+                      type: integer
+                    done:
+                      type: integer
+                    failed:
+                      type: integer
+                    errors:
+                      type: object
+                      description: Error by profile name
+                      additionalProperties:
+                        type: string
+                    result:
+                      description: Operation result. Present when job is done
+                UpdateResult:
+                  type: object
+                  properties:
+                    regenerated:
+                      type: integer
+                    unchanged:
+                      type: integer
+                    removed:
+                      type: integer
+                    failed:
+                      type: integer
+                RevokeResult:
+                  type: object
+                  properties:
+                    name:
+                      type: string
+                      example: john.smith
+                    status:
+                      type: string
+                      enum: [revoked, deleted, notFound, failed]
+                    error:
+                      type: string
+                ProfileNames:
+                  type: object
+                  required:
+                    - names
+                  properties:
+                    names:
+                      type: array
+                      items:
+                        type: string
+                      example: [john.smith, jane.doe]
                 ProfileName:
                   type: object
                   required: